@@ -0,0 +1,29 @@
+import org.gradle.api.Plugin
+import org.gradle.api.Project
+
+class SchematronProcessingPlugin implements Plugin<Project> {
+    static final List<String> VERSIONS = ['1.0', '1.1', '1.2', '1.3']
+
+    void apply(Project project) {
+        project.tasks.register('transpileSchematron') {
+            def inputFile = project.file('src/main/resources/schemas/sch/dita.sch')
+            def transpileXsl = project.file('schxslt2/src/main/resources/content/transpile.xsl')
+            def outputDir = project.layout.buildDirectory.dir('generated/sch/schemas/sch').get().asFile
+            inputs.file inputFile
+            inputs.file transpileXsl
+            outputs.dir outputDir
+
+            doLast {
+                def transpiler = new SchematronTranspiler(transpileXsl.toPath())
+                outputDir.mkdirs()
+
+                VERSIONS.each { version ->
+                    def outputFile = outputDir.toPath().resolve("dita-${version}.xsl")
+
+                    project.logger.info("Transpiling Schematron: ${inputFile.name} ${version} -> ${outputFile.fileName}")
+                    transpiler.process(inputFile.toPath(), "all_${version}", outputFile)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.Xslt30Transformer;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XdmValue;
+
+import javax.xml.transform.stream.StreamSource;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class SchematronTranspiler {
+
+    private static final QName SCHXSLT_PHASE =
+            QName.fromClarkName("{http://dmaus.name/ns/2023/schxslt}phase");
+
+    private final Processor processor;
+    private final Xslt30Transformer transpiler;
+
+    public SchematronTranspiler(Path transpileXsl) throws Exception {
+        processor = new Processor(false);
+        XsltCompiler compiler = processor.newXsltCompiler();
+        transpiler = compiler.compile(new StreamSource(transpileXsl.toFile())).load30();
+    }
+
+    public void process(Path inputSchematron, String phase, Path outputFile) throws Exception {
+        Serializer out = processor.newSerializer(outputFile.toFile());
+        out.setOutputProperty(Serializer.Property.METHOD, "xml");
+        out.setOutputProperty(Serializer.Property.INDENT, "no");
+
+        transpiler.setStylesheetParameters(Map.of(SCHXSLT_PHASE, XdmValue.makeValue(phase)));
+        transpiler.transform(new StreamSource(inputSchematron.toFile()), out);
+    }
+}
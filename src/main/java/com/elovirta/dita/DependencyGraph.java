@@ -0,0 +1,80 @@
+package com.elovirta.dita;
+
+import java.net.URI;
+import java.util.*;
+import java.util.function.Predicate;
+import net.sf.saxon.s9api.QName;
+
+/**
+ * Reverse dependency graph from validation inputs to the open documents that use them. Used to
+ * revalidate only the documents affected by a change.
+ */
+public class DependencyGraph {
+
+  /** Validation input a document depends on. */
+  public sealed interface Dependency {
+    /** Document referenced with {@code href} or {@code conref}. */
+    record File(URI uri) implements Dependency {}
+
+    /** Key referenced with {@code keyref} or {@code conkeyref}. */
+    record Key(String name) implements Dependency {}
+
+    /** Attribute that may be controlled by a subject scheme. */
+    record Attribute(QName name) implements Dependency {}
+  }
+
+  private final Map<URI, Set<Dependency>> dependencies = new HashMap<>();
+  private final Map<Dependency, Set<URI>> dependents = new HashMap<>();
+
+  /** Replace dependencies of a document. */
+  public synchronized void update(URI uri, Set<Dependency> newDependencies) {
+    remove(uri);
+    dependencies.put(uri, Set.copyOf(newDependencies));
+    for (Dependency dependency : newDependencies) {
+      dependents.computeIfAbsent(dependency, key -> new HashSet<>()).add(uri);
+    }
+  }
+
+  /** Remove document and its dependencies. */
+  public synchronized void remove(URI uri) {
+    var previous = dependencies.remove(uri);
+    if (previous == null) {
+      return;
+    }
+    for (Dependency dependency : previous) {
+      var uris = dependents.get(dependency);
+      if (uris != null) {
+        uris.remove(uri);
+        if (uris.isEmpty()) {
+          dependents.remove(dependency);
+        }
+      }
+    }
+  }
+
+  /** Get documents that depend on any of the given dependencies. */
+  public synchronized Set<URI> getDependents(Collection<? extends Dependency> changed) {
+    var res = new HashSet<URI>();
+    for (Dependency dependency : changed) {
+      res.addAll(dependents.getOrDefault(dependency, Collections.emptySet()));
+    }
+    return res;
+  }
+
+  /** Get documents that depend on any dependency that matches the filter. */
+  public synchronized Set<URI> getDependents(Predicate<Dependency> changed) {
+    var res = new HashSet<URI>();
+    dependents.forEach(
+        (dependency, uris) -> {
+          if (changed.test(dependency)) {
+            res.addAll(uris);
+          }
+        });
+    return res;
+  }
+
+  /** Get dependencies of a document. */
+  public synchronized Set<Dependency> getDependencies(URI uri) {
+    return dependencies.getOrDefault(uri, Collections.emptySet());
+  }
+}
@@ -11,6 +11,7 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
 import org.eclipse.lsp4j.launch.LSPLauncher;
 import org.eclipse.lsp4j.services.*;
@@ -22,17 +23,34 @@ public class DitaLanguageServer implements LanguageServer, LanguageClientAware {
 
   private static final Logger logger = LoggerFactory.getLogger(DitaLanguageServer.class);
 
+  private static final String WATCHED_FILES = "**/*.{dita,ditamap}";
+  private static final String WATCHED_FILES_REGISTRATION = "dita.watchedFiles";
+
   private final SmartDebouncer debouncer;
+  private final TaskExecutors executors;
   private final DitaTextDocumentService textDocumentService;
   private final DitaWorkspaceService workspaceService;
   private final Properties properties;
   private LanguageClient client;
+  private boolean watchFiles;
 
-  public record Options(boolean xmlValidation, int debounce) {}
+  /**
+   * Server options.
+   *
+   * @param xmlValidation validate documents against DTD
+   * @param debounce root map revalidation delay in milliseconds
+   * @param virtualThreads run document pipelines and request handlers in virtual threads
+   */
+  public record Options(boolean xmlValidation, int debounce, boolean virtualThreads) {
+    public Options(boolean xmlValidation, int debounce) {
+      this(xmlValidation, debounce, false);
+    }
+  }
 
   public DitaLanguageServer(Options options) {
     this.debouncer = new SmartDebouncer(options.debounce());
-    textDocumentService = new DitaTextDocumentService(this, debouncer, options);
+    this.executors = new TaskExecutors(options.virtualThreads());
+    textDocumentService = new DitaTextDocumentService(this, debouncer, executors, options);
     workspaceService = new DitaWorkspaceService(this);
     properties = new Properties();
     try (InputStream input =
@@ -50,7 +68,13 @@ public class DitaLanguageServer implements LanguageServer, LanguageClientAware {
       textDocumentService.setLocale(Locale.forLanguageTag(params.getLocale()));
     }
 
-    var capabilities = getServerCapabilities();
+    textDocumentService.indexWorkspace(getWorkspaceFolders(params));
+    watchFiles = supportsWatchedFilesRegistration(params.getCapabilities());
+    var pullDiagnostics = supportsPullDiagnostics(params.getCapabilities());
+    textDocumentService.setPullDiagnostics(
+        pullDiagnostics, supportsDiagnosticRefresh(params.getCapabilities()));
+
+    var capabilities = getServerCapabilities(pullDiagnostics);
     var serverInfo =
         new ServerInfo(properties.getProperty("description"), properties.getProperty("version"));
     var result = new InitializeResult(capabilities, serverInfo);
@@ -59,10 +83,60 @@ public class DitaLanguageServer implements LanguageServer, LanguageClientAware {
     return CompletableFuture.completedFuture(result);
   }
 
-  private static @NotNull ServerCapabilities getServerCapabilities() {
+  private static boolean supportsWatchedFilesRegistration(ClientCapabilities capabilities) {
+    return capabilities != null
+        && capabilities.getWorkspace() != null
+        && capabilities.getWorkspace().getDidChangeWatchedFiles() != null
+        && Boolean.TRUE.equals(
+            capabilities.getWorkspace().getDidChangeWatchedFiles().getDynamicRegistration());
+  }
+
+  private static boolean supportsPullDiagnostics(ClientCapabilities capabilities) {
+    return capabilities != null
+        && capabilities.getTextDocument() != null
+        && capabilities.getTextDocument().getDiagnostic() != null;
+  }
+
+  private static boolean supportsDiagnosticRefresh(ClientCapabilities capabilities) {
+    return capabilities != null
+        && capabilities.getWorkspace() != null
+        && capabilities.getWorkspace().getDiagnostics() != null
+        && Boolean.TRUE.equals(capabilities.getWorkspace().getDiagnostics().getRefreshSupport());
+  }
+
+  @Override
+  public void initialized(InitializedParams params) {
+    if (watchFiles && client != null) {
+      var watcher = new FileSystemWatcher(Either.forLeft(WATCHED_FILES));
+      var registration =
+          new Registration(
+              WATCHED_FILES_REGISTRATION,
+              "workspace/didChangeWatchedFiles",
+              new DidChangeWatchedFilesRegistrationOptions(List.of(watcher)));
+      client.registerCapability(new RegistrationParams(List.of(registration)));
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private static List<URI> getWorkspaceFolders(InitializeParams params) {
+    if (params.getWorkspaceFolders() != null && !params.getWorkspaceFolders().isEmpty()) {
+      return params.getWorkspaceFolders().stream()
+          .map(folder -> URI.create(folder.getUri()))
+          .toList();
+    } else if (params.getRootUri() != null) {
+      return List.of(URI.create(params.getRootUri()));
+    }
+    return List.of();
+  }
+
+  private static @NotNull ServerCapabilities getServerCapabilities(boolean pullDiagnostics) {
     var capabilities = new ServerCapabilities();
-    capabilities.setTextDocumentSync(TextDocumentSyncKind.Full);
-    //    capabilities.setDiagnosticProvider(new DiagnosticRegistrationOptions());
+    capabilities.setTextDocumentSync(TextDocumentSyncKind.Incremental);
+    if (pullDiagnostics) {
+      // Diagnostics depend on referenced documents and the root map. Workspace diagnostics are not
+      // supported, open documents are pulled again after a diagnostic refresh request.
+      capabilities.setDiagnosticProvider(new DiagnosticRegistrationOptions(true, false));
+    }
     capabilities.setCompletionProvider(new CompletionOptions());
     capabilities.setDefinitionProvider(new DefinitionOptions());
     capabilities.setCodeActionProvider(new CodeActionOptions());
@@ -79,8 +153,14 @@ public class DitaLanguageServer implements LanguageServer, LanguageClientAware {
     return CompletableFuture.supplyAsync(
         () -> {
           debouncer.shutdown();
+          textDocumentService.persistIndex();
+          logger.info(
+              "Parser pool: {}", textDocumentService.getParser().getCacheManager().getPoolStats());
+          executors.getStats().forEach(stats -> logger.info("Executor: {}", stats));
+          executors.shutdown();
           return null;
-        });
+        },
+        executors.get(TaskExecutors.Workload.BACKGROUND));
   }
 
   @Override
@@ -99,9 +179,40 @@ public class DitaLanguageServer implements LanguageServer, LanguageClientAware {
     return workspaceService;
   }
 
+  /**
+   * Set parser pool capacity.
+   *
+   * @param size maximum number of concurrently used parsers
+   */
+  public void setParserPoolSize(int size) {
+    textDocumentService.setParserPoolSize(size);
+  }
+
+  /**
+   * Set memory budget for documents not open in the editor.
+   *
+   * @param size budget in megabytes
+   */
+  public void setDocumentCacheSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Document cache size must not be negative: " + size);
+    }
+    textDocumentService.setDocumentCacheBudget(size * 1024L * 1024L);
+  }
+
+  /** Handle files changed outside the editor. */
+  public void filesChanged(List<URI> uris) {
+    textDocumentService
+        .filesChanged(uris)
+        .exceptionally(
+            ex -> {
+              logger.error("Failed to handle changed files", ex);
+              return null;
+            });
+  }
+
   public void setCurrentRootMapUri(String uri) {
     textDocumentService.setRootMapUri(URI.create(uri));
-    textDocumentService.revalidateAllOpenDocuments();
   }
 
   @Override
@@ -126,13 +237,20 @@ public class DitaLanguageServer implements LanguageServer, LanguageClientAware {
     return client;
   }
 
+  public TaskExecutors getExecutors() {
+    return executors;
+  }
+
   public static void main(String[] args) {
     logger.info("Starting DITA Language Server...");
 
     var options = new Options(true, 1_000);
     for (String arg : args) {
       switch (arg) {
-        case "--xml-validation" -> options = new Options(true, options.debounce());
+        case "--xml-validation" ->
+            options = new Options(true, options.debounce(), options.virtualThreads());
+        case "--virtual-threads" ->
+            options = new Options(options.xmlValidation(), options.debounce(), true);
       }
     }
     var server = new DitaLanguageServer(options);
@@ -2,15 +2,22 @@ package com.elovirta.dita;
 
 import com.elovirta.dita.DitaLanguageServer.Options;
 import com.elovirta.dita.xml.DITAGrammarCacheManager;
+import com.elovirta.dita.xml.LocationTable;
+import com.elovirta.dita.xml.XmlLexer;
+import com.elovirta.dita.xml.XmlLexerImpl;
 import com.elovirta.dita.xml.XmlSerializer;
+import com.elovirta.dita.xml.XmlSerializerReader;
+import com.elovirta.dita.xml.XmlTokenCache.Tokens;
 import java.io.*;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamSource;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.lib.*;
 import net.sf.saxon.lib.ResourceRequest;
@@ -35,9 +42,32 @@ public class DitaParser {
   private final Options options;
   private final Resolver catalogResolver;
   private final Processor processor;
-  private final XsltExecutable mergeExecutable;
+  private final MapMerger mapMerger;
   private final DITAGrammarCacheManager cacheManager;
 
+  /**
+   * Documents read from disk, reused while unchanged on disk. Parsed trees are shared with the
+   * document cache of {@link DocumentManager}, so both use the document cache budget.
+   */
+  private final LruCache<URI, ParsedFile> parsedFiles =
+      new LruCache<>(
+          DocumentManager.getDefaultCacheBudget(),
+          file -> DocumentManager.estimateSize(file.result().document()),
+          (uri, file) -> logger.debug("Evict {} from parsed file cache", uri));
+
+  private record ParsedFile(FileStamp stamp, ParseResult result) {}
+
+  /** Documents open in the editor, returns {@code null} for documents that are not open. */
+  private volatile Function<URI, OpenDocument> openDocuments = uri -> null;
+
+  /**
+   * Parsed document open in the editor.
+   *
+   * @param document parsed editor content
+   * @param revision revision that changes whenever editor content is parsed
+   */
+  public record OpenDocument(XdmNode document, long revision) {}
+
   public DitaParser(Options options) {
     this.options = options;
     XMLResolverConfiguration config = new XMLResolverConfiguration();
@@ -50,7 +80,9 @@ public class DitaParser {
     config.setFeature(ResolverFeature.LOGGER_LOG_LEVEL, "info");
     config.setFeature(ResolverFeature.CATALOG_FILES, List.of("classpath:/schemas/catalog.xml"));
     this.catalogResolver = new Resolver(config);
-    this.cacheManager = new DITAGrammarCacheManager(this.catalogResolver);
+    // Load DTD grammars while merge stylesheet is compiled
+    var grammars =
+        CompletableFuture.supplyAsync(() -> new DITAGrammarCacheManager(catalogResolver));
     Configuration configuration = Configuration.newConfiguration();
     //    configuration.setResourceResolver(new CatalogResourceResolver(catalogResolver));
     var resolver = new CatalogResourceResolver(catalogResolver);
@@ -61,9 +93,7 @@ public class DitaParser {
             var extension = Utils.getExtension(uri.getPath());
             if (extension != null && (extension.equals("dita") || extension.equals("ditamap"))) {
               try {
-                var content = Files.readString(Paths.get(uri)).toCharArray();
-                var doc = parseDocument(content, uri).document();
-                return doc.getUnderlyingNode();
+                return readDocument(uri).getUnderlyingNode();
               } catch (IOException e) {
                 throw new UncheckedIOException("Failed to read " + request.uri, e);
               }
@@ -72,11 +102,25 @@ public class DitaParser {
           return resolver.resolve(request);
         });
     this.processor = new Processor(configuration);
-    try (var in = getClass().getResourceAsStream("/xslt/merge.xsl")) {
-      this.mergeExecutable =
-          processor.newXsltCompiler().compile(new StreamSource(in, "classpath:/xslt/merge.xsl"));
-    } catch (SaxonApiException | IOException e) {
-      throw new RuntimeException("Failed to parse classpath:/xslt/merge.xsl", e);
+    processor.registerExtensionFunction(new LocationTable.ElementLocationFunction());
+    this.mapMerger =
+        new MapMerger(
+            processor,
+            new MapMerger.DocumentReader() {
+              @Override
+              public XdmNode read(URI uri) throws IOException {
+                return readDocument(uri);
+              }
+
+              @Override
+              public Object version(URI uri) {
+                return getVersion(uri);
+              }
+            });
+    try {
+      this.cacheManager = grammars.join();
+    } catch (CompletionException e) {
+      throw new RuntimeException("Failed to load DTD grammars", e.getCause());
     }
   }
 
@@ -84,38 +128,95 @@ public class DitaParser {
     return processor;
   }
 
+  public DITAGrammarCacheManager getCacheManager() {
+    return cacheManager;
+  }
+
+  /**
+   * Set memory budget for documents read from disk.
+   *
+   * @param budget memory budget in bytes
+   */
+  public void setCacheBudget(long budget) {
+    parsedFiles.setBudget(budget);
+  }
+
   public record ParseResult(XdmNode document, List<Diagnostic> diagnostics) {}
 
   public ParseResult parse(String content, URI uri) {
-    return parseDocument(content.toCharArray(), uri);
+    return parseDocument(content.toCharArray(), uri, new XmlLexerImpl(true));
+  }
+
+  /**
+   * Parse tokenized document content.
+   *
+   * @param tokens tokenized document content
+   * @param uri document URI
+   */
+  public ParseResult parse(Tokens tokens, URI uri) {
+    return parseDocument(tokens.input(), uri, tokens.lexer());
   }
 
+  /** Merge submaps into map. Submaps that have not changed since previous merge are reused. */
   public XdmNode mergeMap(XdmNode src) {
-    try {
-      var transformer = this.mergeExecutable.load();
-      transformer.setSource(src.getUnderlyingNode());
-      XdmDestination dst = new XdmDestination();
-      transformer.setDestination(dst);
-      transformer.transform();
-      return dst.getXdmNode();
-    } catch (SaxonApiException e) {
-      throw new RuntimeException(e);
-    }
+    return mapMerger.merge(src);
   }
 
-  private ParseResult parseDocument(char[] content, URI uri) {
-    //    var contentWithLocation = addLocation(content);
-    char[] contentWithLocation;
-    var serializer = new XmlSerializer();
-    XmlSerializer.Features features;
-    try (CharArrayWriter output = new CharArrayWriter()) {
-      features = serializer.serialize(content, output);
-      contentWithLocation = output.toCharArray();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+  MapMerger getMapMerger() {
+    return mapMerger;
+  }
+
+  /**
+   * Set lookup for documents open in the editor. The resource resolver and map merge use editor
+   * content instead of the file on disk for open documents.
+   */
+  public void setOpenDocuments(Function<URI, OpenDocument> openDocuments) {
+    this.openDocuments = openDocuments;
+  }
+
+  /**
+   * Read and parse document from disk. Parsed documents are reused while file modification time
+   * and size are unchanged.
+   */
+  public ParseResult read(URI uri) throws IOException {
+    // Stamp before reading, so that a concurrent change is detected on next read
+    var stamp = FileStamp.of(uri);
+    var cached = parsedFiles.get(uri);
+    if (cached != null && cached.stamp().equals(stamp)) {
+      return cached.result();
     }
+    logger.info("Parsing {}", uri);
+    var content = Files.readString(Paths.get(uri)).toCharArray();
+    var res = parseDocument(content, uri, new XmlLexerImpl(true));
+    if (stamp != null) {
+      parsedFiles.put(uri, new ParsedFile(stamp, res));
+    }
+    return res;
+  }
+
+  /**
+   * Get parsed document for the resource resolver. Editor content of open documents takes
+   * precedence over files on disk.
+   */
+  XdmNode readDocument(URI uri) throws IOException {
+    var open = openDocuments.apply(uri);
+    return open != null ? open.document() : read(uri).document();
+  }
 
-    try (var in = new CharArrayReader(contentWithLocation)) {
+  /**
+   * Get version of document returned by {@link #readDocument(URI)}: editor revision for open
+   * documents and file stamp for files on disk.
+   *
+   * @return document version, {@code null} if file cannot be read
+   */
+  Object getVersion(URI uri) {
+    var open = openDocuments.apply(uri);
+    return open != null ? (Object) open.revision() : FileStamp.of(uri);
+  }
+
+  private ParseResult parseDocument(char[] content, URI uri, XmlLexer lexer) {
+    try (var in = new XmlSerializerReader(new XmlSerializer(lexer), content)) {
+      var features = in.readProlog();
       var inputSource = new InputSource(in);
       inputSource.setSystemId(uri.toString());
       var documentBuilder = processor.newDocumentBuilder();
@@ -133,27 +234,22 @@ public class DitaParser {
 
                   @Override
                   public void error(SAXParseException exception) throws SAXException {
-                    if (!exception.getMessage().startsWith("Attribute \"xmlns:loc")
-                        && !exception.getMessage().startsWith("Attribute \"loc")) {
-                      diagnostics.add(toDiagnostic(exception, DiagnosticSeverity.Error));
-                    }
+                    diagnostics.add(toDiagnostic(exception, DiagnosticSeverity.Error));
                   }
 
                   @Override
                   public void fatalError(SAXParseException exception) throws SAXException {
                     //                  throw new SAXException(exception);
-                    if (!exception.getMessage().startsWith("Attribute \"xmlns:loc")
-                        && !exception.getMessage().startsWith("Attribute \"loc")) {
-                      diagnostics.add(toDiagnostic(exception, DiagnosticSeverity.Error));
-                    }
+                    diagnostics.add(toDiagnostic(exception, DiagnosticSeverity.Error));
                     //          logger.error(exception.getMessage(), exception);
                   }
                 });
             var doc = documentBuilder.build(new SAXSource(parser, inputSource));
-            diagnostics.addAll(serializer.getDiagnostics());
+            in.getLocations().bind(doc);
+            diagnostics.addAll(in.getDiagnostics());
             return new ParseResult(doc, diagnostics);
           });
-    } catch (SaxonApiException e) {
+    } catch (SaxonApiException | IOException e) {
       throw new RuntimeException(e);
     }
   }
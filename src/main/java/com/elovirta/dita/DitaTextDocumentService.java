@@ -4,7 +4,10 @@ import static com.elovirta.dita.Utils.*;
 import static net.sf.saxon.s9api.streams.Predicates.*;
 import static net.sf.saxon.s9api.streams.Steps.*;
 
+import com.elovirta.dita.DependencyGraph.Dependency;
+import com.elovirta.dita.DitaParser.ParseResult;
 import com.elovirta.dita.KeyManager.KeyDefinition;
+import com.elovirta.dita.TaskExecutors.Workload;
 import com.elovirta.dita.preview.Preview;
 import com.elovirta.dita.preview.PreviewResult;
 import com.elovirta.dita.validator.SchematronValidator;
@@ -13,8 +16,12 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import net.sf.saxon.s9api.*;
 import net.sf.saxon.s9api.streams.Steps;
 import org.eclipse.lsp4j.*;
@@ -35,6 +42,7 @@ public class DitaTextDocumentService implements TextDocumentService {
   private static final String HREF_ATTR = "href";
   private static final String SCOPE_ATTR = "scope";
   private static final String ID_ATTR = "id";
+  private static final String MAP_EXTENSION = "ditamap";
   private static final QName AUDIENCE_ATTR = QName.fromClarkName("audience");
 
   private static final Set<String> CROSS_REFERENCE_ATTRS = Set.of(HREF_ATTR, CONREF_ATTR);
@@ -43,59 +51,272 @@ public class DitaTextDocumentService implements TextDocumentService {
   public static final String EMAIL_SCOPE_MISSING = "email_scope_missing";
 
   private final DitaLanguageServer server;
-  private final DitaParser parser;
+  private final CompletableFuture<DitaParser> parser;
   private final DocumentManager documentManager;
   private final KeyManager keyManager;
   private final SubjectSchemeManager subjectSchemeManager;
+  private final DependencyGraph dependencyGraph = new DependencyGraph();
+  private final TaskExecutors executors;
+  private final DocumentPipeline pipeline;
   private final SmartDebouncer debouncer;
-  private final SchematronValidator schematronValidator;
-  private final Preview preview;
+  private final CompletableFuture<SchematronValidator> schematronValidator;
+  private final CompletableFuture<Preview> preview;
+  /** Slow validation phases, in the order they are run. */
+  private final List<BiFunction<XdmNode, URI, List<Diagnostic>>> slowValidation =
+      List.of(this::doReferenceValidation, this::doSchematronValidation);
+
+  /** Pulled diagnostics by document. */
+  private final Map<URI, DiagnosticResult> diagnosticResults = new ConcurrentHashMap<>();
+  private final ValidationCache validationCache = new ValidationCache();
+  /** Content hashes of open documents. */
+  private final Map<URI, String> contentHashes = new ConcurrentHashMap<>();
+  /** Number of times dependencies of an open document have changed. */
+  private final Map<URI, Long> revisions = new ConcurrentHashMap<>();
 
   private URI rootMapUri;
   private XdmNode rootMap;
+  private volatile boolean pullDiagnostics;
+  private volatile boolean diagnosticRefresh;
+  /** Requested parser pool capacity, applied once the parser is ready. */
+  private volatile int parserPoolSize;
+  /** Requested document cache budget, applied to the parser once it is ready. */
+  private volatile long documentCacheBudget;
   private ResourceBundle LOCALE;
 
   public DitaTextDocumentService(
       DitaLanguageServer server, SmartDebouncer debouncer, DitaLanguageServer.Options options) {
+    this(server, debouncer, new TaskExecutors(), options);
+  }
+
+  /**
+   * Create text document service.
+   *
+   * @param executors executors for interactive requests, validation, and background work
+   */
+  public DitaTextDocumentService(
+      DitaLanguageServer server,
+      SmartDebouncer debouncer,
+      TaskExecutors executors,
+      DitaLanguageServer.Options options) {
     this.server = server;
-    this.parser = new DitaParser(options);
-    this.documentManager = new DocumentManager(parser);
+    this.executors = executors;
+    this.pipeline = new DocumentPipeline(executors.get(Workload.VALIDATION));
+    this.documentManager = new DocumentManager(this::getParser);
+    // Heavy components are initialized in the background, requests wait until they are ready
+    this.parser =
+        CompletableFuture.supplyAsync(
+            () -> {
+              var start = System.currentTimeMillis();
+              var res = new DitaParser(options);
+              res.setOpenDocuments(documentManager::getOpenDocument);
+              logger.info("Parser initialized in {} ms", System.currentTimeMillis() - start);
+              return res;
+            },
+            executors.get(Workload.VALIDATION));
     this.keyManager = new KeyManager();
     this.subjectSchemeManager = new SubjectSchemeManager();
     this.debouncer = debouncer;
     this.LOCALE = ResourceBundle.getBundle("copy", Locale.ENGLISH);
-    this.schematronValidator = new SchematronValidator(parser.getProcessor());
-    this.preview = new Preview(parser.getProcessor(), keyManager);
+    this.schematronValidator = parser.thenApply(p -> new SchematronValidator(p.getProcessor()));
+    this.preview = parser.thenApply(p -> new Preview(p.getProcessor(), keyManager));
+  }
+
+  /** Get parser, waiting for initialization to complete. */
+  public DitaParser getParser() {
+    return parser.join();
+  }
+
+  ValidationCache getValidationCache() {
+    return validationCache;
+  }
+
+  DocumentPipeline getPipeline() {
+    return pipeline;
+  }
+
+  /**
+   * Set parser pool capacity. Does not wait for the parser, the capacity is applied when parser
+   * initialization completes.
+   *
+   * @param size maximum number of concurrently used parsers
+   */
+  public void setParserPoolSize(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Parser pool capacity must be positive: " + size);
+    }
+    parserPoolSize = size;
+    // Pending callbacks may run in any order, always apply the latest requested capacity
+    parser.thenAccept(p -> p.getCacheManager().setCapacity(parserPoolSize));
+  }
+
+  /** Write workspace index to disk, so that it can be reused on the next start. */
+  public void persistIndex() {
+    documentManager.getIndex().persist();
+  }
+
+  /**
+   * Set memory budget for documents not open in the editor. The budget applies both to the
+   * document cache and to documents the parser reads when resolving references, as they share
+   * parsed trees. Does not wait for the parser.
+   *
+   * @param budget memory budget in bytes
+   */
+  public void setDocumentCacheBudget(long budget) {
+    documentManager.setCacheBudget(budget);
+    documentCacheBudget = budget;
+    parser.thenAccept(p -> p.setCacheBudget(documentCacheBudget));
+  }
+
+  /**
+   * Set diagnostics mode. In pull mode diagnostics are computed when the client requests them, and
+   * the client is asked to pull again when dependencies of open documents change.
+   *
+   * @param pullDiagnostics client pulls diagnostics instead of server pushing them
+   * @param diagnosticRefresh client supports diagnostic refresh requests
+   */
+  public void setPullDiagnostics(boolean pullDiagnostics, boolean diagnosticRefresh) {
+    this.pullDiagnostics = pullDiagnostics;
+    this.diagnosticRefresh = diagnosticRefresh;
   }
 
   public void setLocale(Locale locale) {
     this.LOCALE = ResourceBundle.getBundle("copy", locale);
   }
 
-  public void setRootMapUri(URI uri) {
+  /** Index workspace folders in the background. */
+  public CompletableFuture<Void> indexWorkspace(Collection<URI> folders) {
+    var paths =
+        folders.stream()
+            .filter(folder -> "file".equals(folder.getScheme()))
+            .map(Paths::get)
+            .toList();
+    logger.info("Indexing workspace folders: {}", paths);
+    return documentManager
+        .getIndex()
+        .index(paths)
+        .exceptionally(
+            ex -> {
+              logger.error("Failed to index workspace", ex);
+              return null;
+            });
+  }
+
+  /**
+   * Set root map and read it in the background.
+   *
+   * @return future completed when the root map has been read
+   */
+  public CompletableFuture<Void> setRootMapUri(URI uri) {
     rootMapUri = uri;
     logger.info("Setting root map URI: {}", uri);
-    CompletableFuture.runAsync(
+    return CompletableFuture.runAsync(
         () -> {
           try {
             var content = Files.readString(Paths.get(uri));
-            handleRootMap(uri, parser.parse(content, uri).document());
+            handleRootMap(uri, getParser().parse(content, uri).document());
           } catch (Exception e) {
             logger.error("Failed to parse map document", e);
           }
-        });
+        },
+        executors.get(Workload.BACKGROUND));
+  }
+
+  /**
+   * Handle files changed outside the editor. Cached documents are invalidated and open documents
+   * that reference changed files directly or through keys are revalidated. If a map in the root map
+   * closure changed, the root map is also read again, which revalidates open documents that
+   * reference changed keys.
+   *
+   * @param uris changed, created, or deleted files
+   */
+  public CompletableFuture<Void> filesChanged(Collection<URI> uris) {
+    return CompletableFuture.runAsync(
+        () -> {
+          var changed = uris.stream().map(Utils::stripFragment).collect(Collectors.toSet());
+          var rootMapChanged =
+              rootMapUri != null && !Collections.disjoint(getRootMapClosure(), changed);
+          var previous = new HashMap<URI, WorkspaceIndex.Entry>();
+          for (URI uri : changed) {
+            var entry = documentManager.getIndex().get(uri);
+            if (entry != null) {
+              previous.put(uri, entry);
+            }
+            documentManager.invalidate(uri);
+          }
+          // Files whose IDs, titles and references did not change do not affect other documents
+          var targets =
+              changed.stream()
+                  .filter(
+                      uri ->
+                          !previous.containsKey(uri)
+                              || !previous.get(uri).equals(documentManager.getIndexEntry(uri)))
+                  .collect(Collectors.toSet());
+          var dependencies = new HashSet<Dependency>();
+          for (URI target : targets) {
+            dependencies.add(new Dependency.File(target));
+          }
+          for (Map.Entry<String, KeyDefinition> key : keyManager.keys()) {
+            var target = key.getValue().target();
+            if (target != null && targets.contains(stripFragment(target))) {
+              dependencies.add(new Dependency.Key(key.getKey()));
+            }
+          }
+          var affected = dependencyGraph.getDependents(dependencies);
+          affected.removeAll(changed);
+          revalidate(affected);
+          if (rootMapChanged) {
+            logger.info("Map in root map closure changed, read root map");
+            setRootMapUri(rootMapUri);
+          }
+        },
+        executors.get(Workload.BACKGROUND));
+  }
+
+  /** Root map and all maps it references, transitively. */
+  private Set<URI> getRootMapClosure() {
+    var res = new HashSet<URI>();
+    var queue = new ArrayDeque<URI>();
+    queue.add(rootMapUri);
+    while (!queue.isEmpty()) {
+      var uri = queue.poll();
+      if (res.add(uri)) {
+        var entry = documentManager.getIndexEntry(uri);
+        if (entry != null) {
+          entry.references().stream()
+              .filter(reference -> MAP_EXTENSION.equals(getExtension(reference.getPath())))
+              .forEach(queue::add);
+        }
+      }
+    }
+    return res;
   }
 
   private void handleRootMap(URI uri, XdmNode content) {
-    rootMap = parser.mergeMap(content);
-    keyManager.read(uri, rootMap);
+    // Key references are only validated when a root map is set
+    var firstRootMap = rootMap == null;
+    rootMap = getParser().mergeMap(content);
+    var attributes = new HashSet<>(subjectSchemeManager.attributes());
+    var keys = keyManager.read(uri, rootMap).keys();
     subjectSchemeManager.read(uri, rootMap);
-    revalidateAllOpenDocuments();
+    attributes.addAll(subjectSchemeManager.attributes());
+    // Only changed keys and subject scheme controlled attributes need revalidation
+    revalidate(
+        dependencyGraph.getDependents(
+            dependency ->
+                dependency instanceof Dependency.Key key
+                        && (firstRootMap || keys.contains(key.name()))
+                    || dependency instanceof Dependency.Attribute attribute
+                        && attributes.contains(attribute.name())));
   }
 
   @Override
   public CompletableFuture<Either<List<CompletionItem>, CompletionList>> completion(
       CompletionParams params) {
+    return CompletableFuture.supplyAsync(
+        () -> getCompletion(params), executors.get(Workload.INTERACTIVE));
+  }
+
+  private Either<List<CompletionItem>, CompletionList> getCompletion(CompletionParams params) {
     var documentUri = URI.create(params.getTextDocument().getUri());
     var attr = findAttribute(documentUri, params.getPosition());
     if (attr != null) {
@@ -133,7 +354,7 @@ public class DitaTextDocumentService implements TextDocumentService {
         } catch (URISyntaxException e) {
           // TODO: attempt to fix invalid URI
         }
-        return CompletableFuture.completedFuture(Either.forLeft(items));
+        return Either.forLeft(items);
       } else if (localName.equals(KEYREF_ATTR) || localName.equals(CONKEYREF_ATTR)) {
         List<CompletionItem> items = new ArrayList<>();
         var value = attr.getStringValue();
@@ -162,7 +383,7 @@ public class DitaTextDocumentService implements TextDocumentService {
             items.add(item);
           }
         }
-        return CompletableFuture.completedFuture(Either.forLeft(items));
+        return Either.forLeft(items);
       } else if (subjectSchemeManager.hasAttribute(attr.getNodeName())) {
         var parentElem = attr.getParent();
         var items =
@@ -176,15 +397,21 @@ public class DitaTextDocumentService implements TextDocumentService {
                       return item;
                     })
                 .toList();
-        return CompletableFuture.completedFuture(Either.forLeft(items));
+        return Either.forLeft(items);
       }
     }
-    return CompletableFuture.completedFuture(Either.forLeft(Collections.emptyList()));
+    return Either.forLeft(Collections.emptyList());
   }
 
   @Override
   public CompletableFuture<Either<List<? extends Location>, List<? extends LocationLink>>>
       definition(DefinitionParams params) {
+    return CompletableFuture.supplyAsync(
+        () -> getDefinition(params), executors.get(Workload.INTERACTIVE));
+  }
+
+  private Either<List<? extends Location>, List<? extends LocationLink>> getDefinition(
+      DefinitionParams params) {
     var documentUri = URI.create(params.getTextDocument().getUri());
     var attr = findAttribute(documentUri, params.getPosition());
     if (attr != null) {
@@ -198,15 +425,14 @@ public class DitaTextDocumentService implements TextDocumentService {
           }
           var keyDefinition = keyManager.get(keyName);
           if (keyDefinition != null) {
-            return CompletableFuture.completedFuture(
-                Either.forLeft(List.of(keyDefinition.location())));
+            return Either.forLeft(List.of(keyDefinition.location()));
           }
         } else {
           logger.info("Cannot goto key definition because no root map defined");
         }
       }
     }
-    return CompletableFuture.completedFuture(Either.forLeft(Collections.emptyList()));
+    return Either.forLeft(Collections.emptyList());
   }
 
   private XdmNode findAttribute(URI uri, Position position) {
@@ -215,6 +441,11 @@ public class DitaTextDocumentService implements TextDocumentService {
 
   @Override
   public CompletableFuture<Hover> hover(HoverParams params) {
+    return CompletableFuture.supplyAsync(
+        () -> getHover(params), executors.get(Workload.INTERACTIVE));
+  }
+
+  private Hover getHover(HoverParams params) {
     var documentUri = URI.create(params.getTextDocument().getUri());
     var attr = findAttribute(documentUri, params.getPosition());
     if (attr != null) {
@@ -253,13 +484,13 @@ public class DitaTextDocumentService implements TextDocumentService {
               }
             }
             if (content != null) {
-              return CompletableFuture.completedFuture(new Hover(content));
+              return new Hover(content);
             }
           }
         }
       }
     }
-    return CompletableFuture.completedFuture(null);
+    return null;
   }
 
   @Override
@@ -281,7 +512,8 @@ public class DitaTextDocumentService implements TextDocumentService {
           }
 
           return actions;
-        });
+        },
+        executors.get(Workload.INTERACTIVE));
   }
 
   private CodeAction createAddMissingExternalScope(Diagnostic diagnostic, String uri) {
@@ -308,101 +540,402 @@ public class DitaTextDocumentService implements TextDocumentService {
   @Override
   public void didOpen(DidOpenTextDocumentParams params) {
     URI uri = URI.create(params.getTextDocument().getUri());
-    String text = params.getTextDocument().getText();
-    try {
-      var res = parser.parse(text, uri);
-      documentManager.put(uri, res.document(), res.diagnostics());
-      validateDocument(uri, res.document(), res.diagnostics());
-    } catch (Exception e) {
-      logger.error("Failed to parse document", e);
-    }
+    var tokens = documentManager.open(uri, params.getTextDocument().getText());
+
+    pipeline
+        .submit(
+            uri,
+            params.getTextDocument().getVersion(),
+            version -> {
+              var res = getParser().parse(tokens, uri);
+              if (!version.commit(() -> updateDocument(uri, res, tokens.input()))) {
+                return;
+              }
+              validateDocument(version, uri, res.document(), res.diagnostics(), true);
+            })
+        .exceptionally(DitaTextDocumentService::logPipelineFailure);
   }
 
   @Override
   public void didChange(DidChangeTextDocumentParams params) {
-    if (params.getContentChanges().size() != 1) {
-      throw new RuntimeException("DidChange not supported for multiple changes: " + params);
-    }
     URI uri = URI.create(params.getTextDocument().getUri());
-    String text = params.getContentChanges().get(0).getText();
+    var tokens = documentManager.change(uri, params.getContentChanges());
 
-    CompletableFuture.supplyAsync(
-            () -> {
-              var res = parser.parse(text, uri);
-              documentManager.put(uri, res.document(), res.diagnostics());
-              return res;
-            })
-        .thenAccept(
-            doc -> {
-              if (doc != null) {
-                validateDocument(uri, doc.document(), doc.diagnostics());
-                if (Objects.equals(rootMapUri, uri)) {
-                  logger.info("Root map changed, do debounced key read and validate all");
-                  try {
-                    debouncer.debounce(
-                        uri.toString(), () -> handleRootMap(rootMapUri, doc.document()));
-                  } catch (Exception e) {
-                    logger.error("Failed to debounced validate", e);
-                  }
+    pipeline
+        .submit(
+            uri,
+            params.getTextDocument().getVersion(),
+            version -> {
+              var doc = getParser().parse(tokens, uri);
+              if (!version.commit(() -> updateDocument(uri, doc, tokens.input()))) {
+                return;
+              }
+              validateDocument(version, uri, doc.document(), doc.diagnostics(), true);
+              if (Objects.equals(rootMapUri, uri)) {
+                logger.info("Root map changed, do debounced key read and validate all");
+                try {
+                  debouncer.debounce(
+                      uri.toString(), () -> handleRootMap(rootMapUri, doc.document()));
+                } catch (Exception e) {
+                  logger.error("Failed to debounced validate", e);
                 }
               }
             })
-        .exceptionally(
-            ex -> {
-              logger.error("Failed to parse", ex);
-              return null;
-            });
+        .exceptionally(DitaTextDocumentService::logPipelineFailure);
+  }
+
+  private static Void logPipelineFailure(Throwable ex) {
+    if (!(ex instanceof CancellationException)) {
+      logger.error("Failed to parse", ex);
+    }
+    return null;
   }
 
   @Override
   public void didClose(DidCloseTextDocumentParams params) {
     URI uri = URI.create(params.getTextDocument().getUri());
+    pipeline.close(uri);
     documentManager.remove(uri);
+    dependencyGraph.remove(uri);
+    diagnosticResults.remove(uri);
+    revisions.remove(uri);
+    contentHashes.remove(uri);
+  }
+
+  /** Store parsed open document and its dependencies. */
+  private void updateDocument(URI uri, ParseResult res, char[] content) {
+    documentManager.put(uri, res.document(), res.diagnostics());
+    dependencyGraph.update(uri, readDependencies(uri, res.document()));
+    contentHashes.put(uri, ValidationCache.hash(content));
+  }
+
+  private Set<Dependency> readDependencies(URI uri, XdmNode doc) {
+    var res = new HashSet<Dependency>();
+    var entry = documentManager.getIndexEntry(uri);
+    if (entry != null) {
+      for (URI reference : entry.references()) {
+        res.add(new Dependency.File(reference));
+      }
+      for (String keyref : entry.keyrefs()) {
+        res.add(new Dependency.Key(keyref));
+      }
+    }
+    doc.select(descendant(isElement()).then(attribute()))
+        .forEach(attr -> res.add(new Dependency.Attribute(attr.getNodeName())));
+    return res;
   }
 
   @Override
   public void didSave(DidSaveTextDocumentParams params) {}
 
+  /** Revalidate given open documents. */
+  private void revalidate(Set<URI> uris) {
+    if (uris.isEmpty()) {
+      return;
+    }
+    if (pullDiagnostics) {
+      invalidateDiagnostics(uris);
+      return;
+    }
+    try {
+      logger.info("Revalidating {} open documents", uris.size());
+      documentManager.forEach(
+          (uri, parseResult) -> {
+            if (uris.contains(uri)) {
+              validateDocument(
+                  pipeline.current(uri),
+                  uri,
+                  parseResult.document(),
+                  parseResult.diagnostics(),
+                  false);
+            }
+          });
+    } catch (Exception e) {
+      logger.error("Failed to revalidate open documents", e);
+    }
+  }
+
   public void revalidateAllOpenDocuments() {
+    if (pullDiagnostics) {
+      var uris = new HashSet<URI>();
+      documentManager.forEach((uri, parseResult) -> uris.add(uri));
+      invalidateDiagnostics(uris);
+      return;
+    }
     try {
       logger.info("Revalidating all open documents");
       documentManager.forEach(
           (uri, parseResult) ->
-              validateDocument(uri, parseResult.document(), parseResult.diagnostics()));
+              validateDocument(
+                  pipeline.current(uri),
+                  uri,
+                  parseResult.document(),
+                  parseResult.diagnostics(),
+                  false));
     } catch (Exception e) {
       logger.error("Failed to revalidate all open documents", e);
     }
   }
 
-  private void validateDocument(URI uri, XdmNode content, List<Diagnostic> parseErrors) {
+  /**
+   * Validate document and publish diagnostics. Parse errors and fast checks are validated first,
+   * followed by slow validation phases. Remaining phases are skipped and diagnostics are not
+   * published if the document version has been superseded.
+   *
+   * @param version document version, {@code null} if document is not in the pipeline
+   * @param progressive publish fast diagnostics immediately and republish after each slow phase
+   *     that adds diagnostics, instead of publishing once after all phases
+   */
+  private void validateDocument(
+      DocumentPipeline.Version version,
+      URI uri,
+      XdmNode content,
+      List<Diagnostic> parseErrors,
+      boolean progressive) {
     try {
       LanguageClient client = server.getClient();
       if (client == null) {
         logger.info("Client not yet connected, skipping validation for {}", uri);
         return;
       }
+      if (pullDiagnostics) {
+        return;
+      }
 
+      var key = getValidationKey(uri);
+      var memoized = key != null ? validationCache.get(key) : null;
+      if (memoized != null) {
+        logger.debug("Reuse validation results for {}", uri);
+        publishDiagnostics(client, version, uri, concat(memoized, parseErrors));
+        return;
+      }
       var diagnostics = doValidation(content);
-      diagnostics.addAll(doSlowValidation(content, uri));
-      if (parseErrors != null && !parseErrors.isEmpty()) {
-        diagnostics.addAll(parseErrors);
+      var unpublished = true;
+      if (progressive) {
+        if (!publishDiagnostics(client, version, uri, concat(diagnostics, parseErrors))) {
+          return;
+        }
+        unpublished = false;
+      }
+      for (BiFunction<XdmNode, URI, List<Diagnostic>> phase : slowValidation) {
+        if (version != null && !version.isCurrent()) {
+          return;
+        }
+        var phaseDiagnostics = phase.apply(content, uri);
+        if (!phaseDiagnostics.isEmpty()) {
+          diagnostics.addAll(phaseDiagnostics);
+          unpublished = true;
+          if (progressive) {
+            if (!publishDiagnostics(client, version, uri, concat(diagnostics, parseErrors))) {
+              return;
+            }
+            unpublished = false;
+          }
+        }
+      }
+      if (version == null || version.isCurrent()) {
+        memoize(uri, key, diagnostics);
+      }
+      if (unpublished) {
+        publishDiagnostics(client, version, uri, concat(diagnostics, parseErrors));
       }
-
-      var publishParams = new PublishDiagnosticsParams(uri.toString(), diagnostics);
-      client.publishDiagnostics(publishParams);
     } catch (Exception e) {
       logger.error("Failed to validate document", e);
     }
   }
 
-  private List<Diagnostic> doSlowValidation(XdmNode content, URI documentUri) {
+  /**
+   * Get validation cache key of an open document. The key contains the content hash and a snapshot
+   * of everything validation reads outside the document: versions of referenced files, definitions
+   * and targets of referenced keys, and subject scheme values of used attributes.
+   *
+   * @return cache key, {@code null} if document is not open
+   */
+  private ValidationCache.Key getValidationKey(URI uri) {
+    var contentHash = contentHashes.get(uri);
+    if (contentHash == null) {
+      return null;
+    }
+    var inputs = new HashMap<Object, Object>();
+    inputs.put("locale", LOCALE.getLocale());
+    inputs.put("rootMap", rootMap != null);
+    for (Dependency dependency : dependencyGraph.getDependencies(uri)) {
+      if (dependency instanceof Dependency.File file) {
+        inputs.put(file, getFileVersion(file.uri()));
+      } else if (dependency instanceof Dependency.Key key) {
+        var keyDefinition = keyManager.get(key.name());
+        var target = keyDefinition != null ? keyDefinition.target() : null;
+        inputs.put(
+            key,
+            Arrays.asList(
+                keyDefinition != null,
+                target,
+                target != null ? getFileVersion(stripFragment(target)) : null));
+      } else if (dependency instanceof Dependency.Attribute attribute) {
+        inputs.put(attribute, subjectSchemeManager.getValidValues(attribute.name()));
+      }
+    }
+    return new ValidationCache.Key(contentHash, inputs);
+  }
+
+  /**
+   * Get version of a referenced file for the validation cache key. DITA documents are versioned by
+   * their index entry. Other files, like images, are only checked for existence, so they are
+   * versioned by modification time and size without reading the content.
+   */
+  private Object getFileVersion(URI uri) {
+    var path = uri.getPath();
+    if (path != null && WorkspaceIndex.isDitaFile(path)) {
+      return documentManager.getIndexEntry(uri);
+    }
+    return FileStamp.of(uri);
+  }
+
+  /** Memoize validation results if validation inputs did not change during validation. */
+  private void memoize(URI uri, ValidationCache.Key key, List<Diagnostic> diagnostics) {
+    if (key != null && key.equals(getValidationKey(uri))) {
+      validationCache.put(key, diagnostics);
+    }
+  }
+
+  private static List<Diagnostic> concat(
+      List<Diagnostic> validation, List<Diagnostic> parseErrors) {
+    if (parseErrors == null || parseErrors.isEmpty()) {
+      return validation;
+    }
+    var res = new ArrayList<>(validation);
+    res.addAll(parseErrors);
+    return res;
+  }
+
+  /**
+   * Publish diagnostics if document version is still current.
+   *
+   * @return {@code true} if diagnostics were published
+   */
+  private boolean publishDiagnostics(
+      LanguageClient client,
+      DocumentPipeline.Version version,
+      URI uri,
+      List<Diagnostic> diagnostics) {
+    var copy = List.copyOf(diagnostics);
+    if (version == null) {
+      client.publishDiagnostics(new PublishDiagnosticsParams(uri.toString(), copy));
+      return true;
+    }
+    return version.commit(
+        () ->
+            client.publishDiagnostics(
+                new PublishDiagnosticsParams(uri.toString(), copy, version.version())));
+  }
+
+  /**
+   * Pulled diagnostics.
+   *
+   * @param resultId result ID derived from document version, key space version, and revision
+   * @param diagnostics diagnostics, {@code null} if unchanged from previous result
+   */
+  private record DiagnosticResult(String resultId, List<Diagnostic> diagnostics) {}
+
+  @Override
+  public CompletableFuture<DocumentDiagnosticReport> diagnostic(DocumentDiagnosticParams params) {
+    var uri = URI.create(params.getTextDocument().getUri());
+    return pipeline
+        .pending(uri)
+        .handle((res, ex) -> null)
+        .thenApplyAsync(
+            ignore -> {
+              var result = getDiagnosticResult(uri, params.getPreviousResultId());
+              if (result.diagnostics() == null) {
+                return new DocumentDiagnosticReport(
+                    new RelatedUnchangedDocumentDiagnosticReport(result.resultId()));
+              }
+              var report = new RelatedFullDocumentDiagnosticReport(result.diagnostics());
+              report.setResultId(result.resultId());
+              return new DocumentDiagnosticReport(report);
+            },
+            executors.get(Workload.VALIDATION));
+  }
+
+  /**
+   * Get diagnostics of a document. Diagnostics are not computed if the previous result is still
+   * current.
+   *
+   * @param uri document URI
+   * @param previousResultId result ID previously returned to the client, {@code null} if none
+   */
+  private DiagnosticResult getDiagnosticResult(URI uri, String previousResultId) {
+    var version = pipeline.current(uri);
+    var clientVersion = version != null ? version.version() : null;
+    var resultId = getResultId(uri, clientVersion);
+    if (resultId.equals(previousResultId)) {
+      return new DiagnosticResult(resultId, null);
+    }
+    var cached = diagnosticResults.get(uri);
+    if (cached != null && cached.resultId().equals(resultId)) {
+      return cached;
+    }
+    var document = documentManager.get(uri);
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    if (document != null) {
+      var key = getValidationKey(uri);
+      var validation = key != null ? validationCache.get(key) : null;
+      if (validation == null) {
+        validation = doValidation(document.document());
+        for (BiFunction<XdmNode, URI, List<Diagnostic>> phase : slowValidation) {
+          validation.addAll(phase.apply(document.document(), uri));
+        }
+        memoize(uri, key, validation);
+      }
+      diagnostics = concat(validation, document.diagnostics());
+    }
+    var result = new DiagnosticResult(resultId, List.copyOf(diagnostics));
+    // Results computed for a superseded version or revision are returned but not cached
+    if (version == null || version.isCurrent()) {
+      if (resultId.equals(getResultId(uri, clientVersion))) {
+        diagnosticResults.put(uri, result);
+      }
+    }
+    return result;
+  }
+
+  private String getResultId(URI uri, Integer clientVersion) {
+    return "%s:%d:%d"
+        .formatted(clientVersion, keyManager.getVersion(), revisions.getOrDefault(uri, 0L));
+  }
+
+  /** Drop pulled diagnostics of documents whose dependencies changed and ask client to pull. */
+  private void invalidateDiagnostics(Set<URI> uris) {
+    if (uris.isEmpty()) {
+      return;
+    }
+    logger.info("Invalidating diagnostics of {} open documents", uris.size());
+    for (URI uri : uris) {
+      revisions.merge(uri, 1L, Long::sum);
+      diagnosticResults.remove(uri);
+    }
+    var client = server.getClient();
+    if (diagnosticRefresh && client != null) {
+      client.refreshDiagnostics();
+    }
+  }
+
+  /** Validate references to other documents, keys, and subject schemes. */
+  private List<Diagnostic> doReferenceValidation(XdmNode content, URI documentUri) {
     List<Diagnostic> diagnostics = new ArrayList<>();
     if (rootMap != null) {
       validateConrefAttributes(content, diagnostics);
     }
     validateCrossReferences(content, documentUri, diagnostics);
     validateProfilingAttributes(content, diagnostics);
-    schematronValidator.validate(content, diagnostics);
+
+    return diagnostics;
+  }
+
+  /** Validate against built-in Schematron schema. */
+  private List<Diagnostic> doSchematronValidation(XdmNode content, URI documentUri) {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    schematronValidator.join().validate(content, diagnostics);
 
     return diagnostics;
   }
@@ -651,11 +1184,12 @@ public class DitaTextDocumentService implements TextDocumentService {
         () -> {
           var start = System.currentTimeMillis();
           var documentCache = documentManager.get(uri);
-          var html = preview.generatePreview(documentCache.document());
+          var html = preview.join().generatePreview(documentCache.document());
           var result = new PreviewResult();
           result.setHtml(html);
           logger.info("Preview generated in {} ms", System.currentTimeMillis() - start);
           return result;
-        });
+        },
+        executors.get(Workload.BACKGROUND));
   }
 }
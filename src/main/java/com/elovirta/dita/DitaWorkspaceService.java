@@ -1,6 +1,8 @@
 package com.elovirta.dita;
 
+import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import java.net.URI;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.eclipse.lsp4j.*;
@@ -34,7 +36,8 @@ public class DitaWorkspaceService implements WorkspaceService {
                             MessageType.Info, "Root map set to: " + getFileName(rootMapUri)));
                 server.setCurrentRootMapUri(rootMapUri);
                 return null;
-              });
+              },
+              server.getExecutors().get(TaskExecutors.Workload.INTERACTIVE));
         }
       }
     }
@@ -48,13 +51,32 @@ public class DitaWorkspaceService implements WorkspaceService {
   @Override
   public void didChangeConfiguration(DidChangeConfigurationParams params) {
     logger.info("Configuration changed");
+    if (params.getSettings() instanceof JsonObject settings
+        && settings.get("dita") instanceof JsonObject dita) {
+      if (dita.get("parserPoolSize") instanceof JsonPrimitive size && size.isNumber()) {
+        try {
+          server.setParserPoolSize(size.getAsInt());
+        } catch (IllegalArgumentException e) {
+          logger.warn("Invalid parser pool size: {}", e.getMessage());
+        }
+      }
+      if (dita.get("documentCacheSize") instanceof JsonPrimitive size && size.isNumber()) {
+        try {
+          server.setDocumentCacheSize(size.getAsInt());
+        } catch (IllegalArgumentException e) {
+          logger.warn("Invalid document cache size: {}", e.getMessage());
+        }
+      }
+    }
   }
 
   @Override
   public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
     logger.info("Watched files changed: {} files", params.getChanges().size());
     for (FileEvent event : params.getChanges()) {
-      logger.info("  - {} ({})", event.getUri(), event.getType());
+      logger.debug("  - {} ({})", event.getUri(), event.getType());
     }
+    server.filesChanged(
+        params.getChanges().stream().map(event -> URI.create(event.getUri())).toList());
   }
 }
@@ -1,27 +1,29 @@
 package com.elovirta.dita;
 
-import static com.elovirta.dita.Utils.ATTR_ID;
-import static com.elovirta.dita.Utils.TOPIC_TOPIC;
-import static com.elovirta.dita.xml.XmlSerializer.LOC_ATTR_PREFIX;
-import static com.elovirta.dita.xml.XmlSerializer.LOC_NAMESPACE;
 import static net.sf.saxon.s9api.streams.Predicates.*;
 import static net.sf.saxon.s9api.streams.Steps.attribute;
 import static net.sf.saxon.s9api.streams.Steps.descendant;
 
 import com.elovirta.dita.DitaParser.ParseResult;
+import com.elovirta.dita.xml.LocationTable;
+import com.elovirta.dita.xml.XmlTokenCache;
+import com.elovirta.dita.xml.XmlTokenCache.Tokens;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 import net.sf.saxon.s9api.XdmNode;
-import net.sf.saxon.s9api.streams.Steps;
+import net.sf.saxon.tree.tiny.TinyTree;
 import org.eclipse.lsp4j.Diagnostic;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -31,11 +33,76 @@ public class DocumentManager {
 
   private static final Logger logger = LoggerFactory.getLogger(DocumentManager.class);
 
-  private final DitaParser ditaParser;
+  /** Estimated size of a document tree node in bytes. */
+  private static final long NODE_SIZE = 64;
+
+  /** Estimated size of an attribute in bytes, including attribute location lookup. */
+  private static final long ATTRIBUTE_SIZE = 128;
+
+  private final Supplier<DitaParser> ditaParser;
+
+  /** Documents open in the editor. */
   private final Map<URI, DocumentCache> openDocuments = new ConcurrentHashMap<>();
 
+  /** Parsed trees of documents open in the editor, with revision of editor content. */
+  private final Map<URI, DitaParser.OpenDocument> openTrees = new ConcurrentHashMap<>();
+
+  private final AtomicLong revision = new AtomicLong();
+
+  /** Documents read from disk, evicted when over memory budget. */
+  private final LruCache<URI, DocumentCache> diskDocuments;
+
+  private final Map<URI, EditorBuffer> buffers = new ConcurrentHashMap<>();
+  private final WorkspaceIndex index;
+
   public DocumentManager(DitaParser ditaParser) {
+    this(() -> ditaParser);
+  }
+
+  /**
+   * Create document manager.
+   *
+   * @param ditaParser parser supplier, called when a document is first parsed
+   */
+  public DocumentManager(Supplier<DitaParser> ditaParser) {
     this.ditaParser = ditaParser;
+    this.index = new WorkspaceIndex(ditaParser);
+    this.diskDocuments =
+        new LruCache<>(
+            getDefaultCacheBudget(),
+            cache -> estimateSize(cache.document()),
+            (uri, cache) -> logger.debug("Evict {} from document cache", uri));
+  }
+
+  /** Default memory budget for documents read from disk, a quarter of maximum heap size. */
+  static long getDefaultCacheBudget() {
+    return Runtime.getRuntime().maxMemory() / 4;
+  }
+
+  /**
+   * Set memory budget for documents read from disk. Evicted documents are summarized in the
+   * workspace index and reparsed when needed.
+   *
+   * @param budget memory budget in bytes
+   */
+  public void setCacheBudget(long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Document cache budget must not be negative: " + budget);
+    }
+    logger.info("Set document cache budget to {} bytes", budget);
+    diskDocuments.setBudget(budget);
+  }
+
+  /** Estimate memory used by a parsed document. */
+  static long estimateSize(XdmNode doc) {
+    if (doc.getUnderlyingNode().getTreeInfo() instanceof TinyTree tree) {
+      return tree.getNumberOfNodes() * NODE_SIZE + tree.getNumberOfAttributes() * ATTRIBUTE_SIZE;
+    }
+    return NODE_SIZE;
+  }
+
+  public WorkspaceIndex getIndex() {
+    return index;
   }
 
   public record DocumentCache(
@@ -58,34 +125,103 @@ public class DocumentManager {
   }
 
   public DocumentCache get(URI uri) {
-    var documentCache =
-        openDocuments.computeIfAbsent(
-            uri,
-            u -> {
-              try {
-                logger.info("Parsing {}", u);
-                var res = ditaParser.parse(Files.readString(Paths.get(u)), uri);
-                var doc = res.document();
-                return new DocumentCache(
-                    doc, readIds(doc), readAttributeLocations(doc), res.diagnostics());
-              } catch (IOException e) {
-                logger.error("Error parsing {}", u, e);
-                return null;
-              }
-            });
-    if (documentCache == null) {
+    var documentCache = openDocuments.get(uri);
+    if (documentCache != null) {
+      return documentCache;
+    }
+    documentCache = diskDocuments.get(uri);
+    if (documentCache != null) {
+      return documentCache;
+    }
+    try {
+      // Parsed tree is shared with the resource resolver of the parser
+      var res = ditaParser.get().read(uri);
+      var doc = res.document();
+      index.update(uri, doc);
+      documentCache =
+          new DocumentCache(doc, readIds(doc), readAttributeLocations(doc), res.diagnostics());
+      diskDocuments.put(uri, documentCache);
+      return documentCache;
+    } catch (IOException e) {
+      logger.error("Error parsing {}", uri, e);
       return null;
     }
-    return documentCache;
   }
 
+  /**
+   * Get parsed document open in the editor.
+   *
+   * @return parsed editor content and its revision, {@code null} if document is not open
+   */
+  public DitaParser.OpenDocument getOpenDocument(URI uri) {
+    return openTrees.get(uri);
+  }
+
+  /** Add document open in the editor. Open documents are never evicted. */
   public void put(URI uri, XdmNode doc, List<Diagnostic> diagnostics) {
+    index.update(uri, doc);
+    diskDocuments.remove(uri);
     openDocuments.put(
         uri, new DocumentCache(doc, readIds(doc), readAttributeLocations(doc), diagnostics));
+    openTrees.put(uri, new DitaParser.OpenDocument(doc, revision.incrementAndGet()));
   }
 
+  /**
+   * Remove document closed in the editor. Index entry built from editor content is dropped, as
+   * the editor content may not have been saved.
+   */
   public void remove(URI uri) {
-    openDocuments.remove(uri);
+    openTrees.remove(uri);
+    if (openDocuments.remove(uri) != null) {
+      index.remove(uri);
+    }
+    buffers.remove(uri);
+  }
+
+  /** Editor content of an open document. */
+  private record EditorBuffer(TextDocumentBuffer text, XmlTokenCache tokens) {}
+
+  /**
+   * Open editor buffer for document.
+   *
+   * @return tokenized document content
+   */
+  public Tokens open(URI uri, String text) {
+    var buffer = new EditorBuffer(new TextDocumentBuffer(text), new XmlTokenCache());
+    buffers.put(uri, buffer);
+    return buffer.tokens().update(buffer.text().toCharArray());
+  }
+
+  /**
+   * Apply content changes to editor buffer. Changes without a range replace the whole document.
+   * Only the changed region is re-lexed.
+   *
+   * @return tokenized document content after changes
+   */
+  public Tokens change(URI uri, List<TextDocumentContentChangeEvent> changes) {
+    var buffer = buffers.get(uri);
+    for (TextDocumentContentChangeEvent change : changes) {
+      if (change.getRange() == null) {
+        if (buffer == null) {
+          buffer = new EditorBuffer(new TextDocumentBuffer(change.getText()), new XmlTokenCache());
+          buffers.put(uri, buffer);
+        } else {
+          buffer.text().setText(change.getText());
+          buffer.tokens().invalidate();
+        }
+      } else if (buffer == null) {
+        throw new IllegalStateException("Incremental change for document not opened: " + uri);
+      } else {
+        var start = buffer.text().offsetOf(change.getRange().getStart());
+        var end = Math.max(start, buffer.text().offsetOf(change.getRange().getEnd()));
+        buffer.text().replace(start, end, change.getText());
+        buffer.tokens().edit(start, end, change.getText().length());
+      }
+    }
+    if (buffer == null) {
+      throw new IllegalStateException("No content for document: " + uri);
+    }
+    return buffer.tokens().update(buffer.text().toCharArray());
   }
 
   public void forEach(BiConsumer<URI, ParseResult> action) {
@@ -93,77 +229,82 @@ public class DocumentManager {
         (uri, cache) -> action.accept(uri, new ParseResult(cache.document(), cache.diagnostics())));
   }
 
-  public Collection<String> listIds(URI uri) {
-    var cache = get(uri);
-    return cache != null ? cache.ids().keySet() : Collections.emptyList();
+  /**
+   * Invalidate cached document and index entry after the file has changed outside the editor.
+   * Documents open in the editor are not affected, as editor content takes precedence.
+   */
+  public void invalidate(URI uri) {
+    diskDocuments.remove(uri);
+    index.invalidate(uri);
+    if (!openDocuments.containsKey(uri)) {
+      index.remove(uri);
+    }
+  }
+
+  /**
+   * Get index entry for document. Documents not in the workspace index are scanned and indexed
+   * without a full parse.
+   *
+   * @return index entry, {@code null} if document cannot be read
+   */
+  public WorkspaceIndex.Entry getIndexEntry(URI uri) {
+    var entry = index.get(uri);
+    if (entry != null) {
+      return entry;
+    }
+    if (!"file".equals(uri.getScheme())) {
+      return null;
+    }
+    try {
+      return index.scan(uri, Files.readString(Paths.get(uri)));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      logger.error("Error reading {}", uri, e);
+      return null;
+    }
   }
 
-  private Map<String, List<String>> getIds(URI uri) {
-    var cache = get(uri);
-    return cache != null ? cache.ids() : Collections.emptyMap();
+  public Collection<String> listIds(URI uri) {
+    var entry = getIndexEntry(uri);
+    return entry != null ? entry.ids().keySet() : Collections.emptyList();
   }
 
   /** Return element IDs for a topic ID. */
   public Collection<String> listElementIds(URI uri, @Nullable String topicId) {
-    var id = topicId;
-    var cache = get(uri);
-    if (cache == null) {
+    var entry = getIndexEntry(uri);
+    if (entry == null) {
       return Collections.emptyList();
     }
-    // FIXME: cache root ID
+    var id = topicId != null ? topicId : entry.rootId();
     if (id == null) {
-      id =
-          cache
-              .document()
-              .select(descendant(TOPIC_TOPIC).first().then(attribute(ATTR_ID)))
-              .map(XdmNode::getStringValue)
-              .findFirst()
-              .orElse(null);
-      if (id == null) {
-        return Collections.emptyList();
-      }
+      return Collections.emptyList();
     }
-    return cache.ids().getOrDefault(id, Collections.emptyList());
+    return entry.ids().getOrDefault(id, Collections.emptyList());
   }
 
   public boolean exists(URI uri, String topicId, String elementId) {
-    var cache = get(uri);
-    if (cache == null) {
+    var entry = getIndexEntry(uri);
+    if (entry == null) {
       return false;
     }
-    return cache.ids().getOrDefault(topicId, Collections.emptyList()).contains(elementId);
+    return entry.ids().getOrDefault(topicId, Collections.emptyList()).contains(elementId);
   }
 
   public boolean exists(URI uri, String topicId) {
-    var cache = get(uri);
-    if (cache == null) {
+    var entry = getIndexEntry(uri);
+    if (entry == null) {
       return false;
     }
-    return cache.ids().containsKey(topicId);
+    return entry.ids().containsKey(topicId);
   }
 
   public boolean exists(URI uri) {
-    return openDocuments.containsKey(uri) || Files.exists(Paths.get(uri));
+    return openDocuments.containsKey(uri) || index.contains(uri) || Files.exists(Paths.get(uri));
   }
 
   private Map<String, List<String>> readIds(XdmNode doc) {
-    var res =
-        doc.select(descendant(TOPIC_TOPIC))
-            .flatMap(
-                topic -> {
-                  var topicId = topic.attribute(ATTR_ID);
-                  return topic
-                      .select(
-                          Steps.child(isElement())
-                              .where(not(TOPIC_TOPIC))
-                              .then(Steps.descendantOrSelf().then(attribute(ATTR_ID))))
-                      .map(elementId -> Map.entry(topicId, elementId.getStringValue()));
-                })
-            .toList();
-    return res.stream()
-        .collect(
-            Collectors.groupingBy(
-                Map.Entry::getKey, Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+    return WorkspaceIndex.readIds(doc);
   }
 
   record RangeValue<T>(Range range, T value) {}
@@ -187,25 +328,14 @@ public class DocumentManager {
     final TreeMap<PositionKey, RangeValue<XdmNode>> res = new TreeMap<>();
     doc.select(
             descendant(isElement())
-                .then(
-                    attribute(
-                        attr ->
-                            attr.getNodeName().getNamespaceUri().toString().equals(LOC_NAMESPACE)
-                                && attr.getNodeName().getLocalName().startsWith(LOC_ATTR_PREFIX))))
+                .then(attribute(attr -> attr.getNodeName().getNamespaceUri().toString().isEmpty())))
         .forEach(
-            attr ->
-                attr.getParent()
-                    .select(
-                        attribute(
-                            attr.getNodeName().getLocalName().substring(LOC_ATTR_PREFIX.length())))
-                    .asOptionalNode()
-                    .ifPresent(
-                        a -> {
-                          var range = Utils.parseRange(attr.getStringValue());
-                          if (range != null) {
-                            res.put(new PositionKey(range.getStart()), new RangeValue<>(range, a));
-                          }
-                        }));
+            attr -> {
+              var range = LocationTable.getAttributeRange(attr);
+              if (range != null) {
+                res.put(new PositionKey(range.getStart()), new RangeValue<>(range, attr));
+              }
+            });
     return res;
   }
 }
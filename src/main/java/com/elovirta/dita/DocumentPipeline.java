@@ -0,0 +1,209 @@
+package com.elovirta.dita;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-document pipeline for parse and validation work. Each document change gets a new {@link
+ * Version}. Queued work for a superseded version is cancelled, and running work for a superseded
+ * version can no longer commit its results.
+ */
+public class DocumentPipeline {
+
+  private static final Logger logger = LoggerFactory.getLogger(DocumentPipeline.class);
+
+  private final Executor executor;
+  private final Map<URI, State> states = new ConcurrentHashMap<>();
+  private final LongAdder superseded = new LongAdder();
+
+  /**
+   * Pipeline state of a document. Guarded by a lock instead of a monitor, so that virtual threads
+   * blocked on a commit do not pin their carrier threads.
+   */
+  private static final class State {
+    private final ReentrantLock lock = new ReentrantLock();
+    private long sequence;
+    private Version latest;
+    private CompletableFuture<Void> pending;
+  }
+
+  /** Document version. Results computed for a version are committed only if it is the latest. */
+  public final class Version {
+    private final URI uri;
+    private final State state;
+    private final long sequence;
+    private final Integer version;
+
+    private Version(URI uri, State state, long sequence, Integer version) {
+      this.uri = uri;
+      this.state = state;
+      this.sequence = sequence;
+      this.version = version;
+    }
+
+    /** Client document version, {@code null} if unknown. */
+    public Integer version() {
+      return version;
+    }
+
+    /** Test if this is still the latest version of the document. */
+    public boolean isCurrent() {
+      state.lock.lock();
+      try {
+        return state.latest == this && states.get(uri) == state;
+      } finally {
+        state.lock.unlock();
+      }
+    }
+
+    /**
+     * Commit results if this is still the latest version. Commits of the same document are
+     * serialized, so results of a superseded version cannot overwrite newer results.
+     *
+     * @param action action that commits results
+     * @return {@code true} if results were committed
+     */
+    public boolean commit(Runnable action) {
+      state.lock.lock();
+      try {
+        if (state.latest != this || states.get(uri) != state) {
+          superseded.increment();
+          logger.debug("Drop results for superseded version {} of {}", version, uri);
+          return false;
+        }
+        action.run();
+        return true;
+      } finally {
+        state.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Create pipeline.
+   *
+   * @param executor executor for pipeline work
+   */
+  public DocumentPipeline(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Start new version of a document without running work. Work already queued for the document is
+   * cancelled.
+   *
+   * @param uri document URI
+   * @param version client document version, {@code null} if unknown
+   * @return new latest version
+   */
+  public Version next(URI uri, Integer version) {
+    var state = states.computeIfAbsent(uri, key -> new State());
+    state.lock.lock();
+    try {
+      if (state.pending != null && state.pending.cancel(false)) {
+        superseded.increment();
+      }
+      state.pending = null;
+      state.latest = new Version(uri, state, ++state.sequence, version);
+      return state.latest;
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  /**
+   * Run work for a new version of a document. Work already queued for the document is cancelled.
+   *
+   * @param uri document URI
+   * @param version client document version, {@code null} if unknown
+   * @param task work that commits results with {@link Version#commit(Runnable)}
+   * @return future that completes when work is done or cancelled
+   */
+  public CompletableFuture<Void> submit(URI uri, Integer version, Consumer<Version> task) {
+    var next = next(uri, version);
+    var future =
+        CompletableFuture.runAsync(
+            () -> {
+              if (next.isCurrent()) {
+                task.accept(next);
+              }
+            },
+            executor);
+    next.state.lock.lock();
+    try {
+      if (next.state.latest == next) {
+        next.state.pending = future;
+      }
+    } finally {
+      next.state.lock.unlock();
+    }
+    return future;
+  }
+
+  /**
+   * Get latest version of a document. Work that is not tied to a document change, such as
+   * revalidation, uses the latest version to avoid publishing results over a newer change.
+   *
+   * @return latest version, {@code null} if document is not in the pipeline
+   */
+  public Version current(URI uri) {
+    var state = states.get(uri);
+    if (state == null) {
+      return null;
+    }
+    state.lock.lock();
+    try {
+      return state.latest;
+    } finally {
+      state.lock.unlock();
+    }
+  }
+
+  /**
+   * Get work queued or running for the latest version of a document.
+   *
+   * @return future that completes when work is done, completed future if there is no work
+   */
+  public CompletableFuture<Void> pending(URI uri) {
+    var state = states.get(uri);
+    if (state != null) {
+      state.lock.lock();
+      try {
+        if (state.pending != null) {
+          return state.pending;
+        }
+      } finally {
+        state.lock.unlock();
+      }
+    }
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /** Remove document from pipeline. Queued work is cancelled and running work will not commit. */
+  public void close(URI uri) {
+    var state = states.remove(uri);
+    if (state != null) {
+      state.lock.lock();
+      try {
+        if (state.pending != null) {
+          state.pending.cancel(false);
+        }
+      } finally {
+        state.lock.unlock();
+      }
+    }
+  }
+
+  /** Number of superseded versions whose work was cancelled or whose results were dropped. */
+  public long getSuperseded() {
+    return superseded.sum();
+  }
+}
@@ -0,0 +1,329 @@
+package com.elovirta.dita;
+
+import static com.elovirta.dita.Utils.ATTR_ID;
+import static com.elovirta.dita.Utils.stripFragment;
+
+import com.elovirta.dita.WorkspaceIndex.Entry;
+import com.elovirta.dita.xml.XmlLexer;
+import com.elovirta.dita.xml.XmlLexer.TokenType;
+import com.elovirta.dita.xml.XmlLexerImpl;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Streaming summarizer that reads a document index entry directly from lexer tokens.
+ *
+ * <p>The document is not validated and no tree is built. Element types are recognized from {@code
+ * class} attributes in the document, default {@code class} values of the DTD grammar if it has
+ * already been loaded, or element names, like in {@link Utils}.
+ */
+final class DocumentScanner {
+
+  private static final String TOPIC_TOPIC = " topic/topic ";
+  private static final String TOPIC_TITLE = " topic/title ";
+  private static final Set<String> REFERENCE_ATTRS = Set.of("href", "conref");
+  private static final Set<String> KEYREF_ATTRS = Set.of("keyref", "conkeyref");
+  private static final String CLASS_ATTR = "class";
+  private static final String KEYS_ATTR = "keys";
+  private static final String SCOPE_ATTR = "scope";
+
+  private final Function<String, Map<String, String>> classDefaults;
+
+  /**
+   * Create scanner.
+   *
+   * @param classDefaults function from DTD public ID to default class values by element name
+   */
+  DocumentScanner(Function<String, Map<String, String>> classDefaults) {
+    this.classDefaults = classDefaults;
+  }
+
+  /** Open element. */
+  private static final class Frame {
+    final String name;
+    final boolean topic;
+    /** Element IDs of the enclosing topic, {@code null} if not in a topic with an ID. */
+    final List<String> elementIds;
+    boolean hasTitle;
+    /** Title text, {@code null} if element is not in a topic title. */
+    StringBuilder title;
+    /** ID of the topic whose title this element is, or ID of the topic itself. */
+    String titleOf;
+
+    Frame(String name, boolean topic, List<String> elementIds) {
+      this.name = name;
+      this.topic = topic;
+      this.elementIds = elementIds;
+    }
+  }
+
+  /**
+   * Scan document for index entry.
+   *
+   * @param uri document URI
+   * @param content document content
+   * @return index entry
+   */
+  Entry scan(URI uri, char[] content) {
+    var lexer = new XmlLexerImpl(true);
+    lexer.setInput(content);
+
+    var titles = new LinkedHashMap<String, String>();
+    var ids = new HashMap<String, List<String>>();
+    var keys = new LinkedHashSet<String>();
+    var references = new LinkedHashSet<URI>();
+    var keyrefs = new LinkedHashSet<String>();
+
+    var stack = new ArrayDeque<Frame>();
+    Map<String, String> defaults = null;
+    var inDoctype = false;
+    var publicId = false;
+    String name = null;
+    String attrName = null;
+    var attrs = new HashMap<String, String>();
+    var inValue = false;
+    var value = new StringBuilder();
+    while (lexer.hasNext()) {
+      var type = lexer.next();
+      switch (type) {
+        case DOCTYPE_START -> inDoctype = true;
+        case DOCTYPE_END -> inDoctype = false;
+        case ELEMENT_START -> {
+          if (name != null && !name.isEmpty()) {
+            // Unterminated start tag
+            stack.push(
+                startElement(
+                    uri, name, attrs, defaults, stack, titles, ids, keys, references, keyrefs));
+          }
+          name = "";
+          attrs.clear();
+        }
+        case ELEMENT_NAME_START -> {
+          if (inDoctype) {
+            publicId = text(lexer).equals("PUBLIC");
+          } else if (name != null && name.isEmpty()) {
+            name = text(lexer);
+          }
+        }
+        case ATTR_NAME -> attrName = text(lexer);
+        case ATTR_QUOTE -> {
+          if (!inValue) {
+            inValue = true;
+            value.setLength(0);
+          } else {
+            inValue = false;
+            if (inDoctype) {
+              if (publicId && defaults == null) {
+                defaults = getClassDefaults(value.toString());
+              }
+            } else if (attrName != null) {
+              attrs.putIfAbsent(attrName, value.toString());
+              attrName = null;
+            }
+          }
+        }
+        case ATTR_VALUE -> {
+          if (inValue) {
+            value.append(lexer.getTextBuffer(), lexer.getTextStart(), lexer.getTextLength());
+          }
+        }
+        case ENTITY_REF, CHAR_REF -> {
+          if (inValue) {
+            appendReference(value, lexer);
+          } else if (name == null && isInTitle(stack)) {
+            appendReference(stack.peek().title, lexer);
+          }
+        }
+        case ELEMENT_END, EMPTY_ELEMENT_END -> {
+          inValue = false;
+          attrName = null;
+          if (name != null && !name.isEmpty()) {
+            var frame =
+                startElement(
+                    uri, name, attrs, defaults, stack, titles, ids, keys, references, keyrefs);
+            if (type == TokenType.ELEMENT_END) {
+              stack.push(frame);
+            } else {
+              endElement(frame, titles);
+            }
+          }
+          name = null;
+        }
+        case ELEMENT_NAME_END -> {
+          var end = text(lexer);
+          if (stack.stream().anyMatch(frame -> frame.name.equals(end))) {
+            Frame frame;
+            do {
+              frame = stack.pop();
+              endElement(frame, titles);
+            } while (!frame.name.equals(end));
+          }
+        }
+        case CHAR_DATA, CDATA_CONTENT, WHITESPACE -> {
+          if (name == null && isInTitle(stack)) {
+            stack
+                .peek()
+                .title
+                .append(lexer.getTextBuffer(), lexer.getTextStart(), lexer.getTextLength());
+          }
+        }
+        default -> {}
+      }
+    }
+    while (!stack.isEmpty()) {
+      endElement(stack.pop(), titles);
+    }
+
+    var rootId = titles.isEmpty() ? null : titles.keySet().iterator().next();
+    return new Entry(
+        rootId,
+        Collections.unmodifiableMap(titles),
+        ids,
+        Collections.unmodifiableSet(keys),
+        Collections.unmodifiableSet(references),
+        Collections.unmodifiableSet(keyrefs));
+  }
+
+  private Map<String, String> getClassDefaults(String publicId) {
+    var res = classDefaults.apply(publicId);
+    return res != null ? res : Collections.emptyMap();
+  }
+
+  private static Frame startElement(
+      URI uri,
+      String name,
+      Map<String, String> attrs,
+      Map<String, String> defaults,
+      Deque<Frame> stack,
+      Map<String, String> titles,
+      Map<String, List<String>> ids,
+      Set<String> keys,
+      Set<URI> references,
+      Set<String> keyrefs) {
+    readAttributes(uri, attrs, keys, references, keyrefs);
+    var id = attrs.get(ATTR_ID);
+    var parent = stack.peek();
+    if (isType(name, attrs, defaults, TOPIC_TOPIC)) {
+      if (id == null) {
+        return new Frame(name, true, null);
+      }
+      titles.putIfAbsent(id, "");
+      var frame = new Frame(name, true, ids.computeIfAbsent(id, key -> new ArrayList<>()));
+      frame.titleOf = id;
+      return frame;
+    }
+    if (id != null && parent != null && parent.elementIds != null) {
+      parent.elementIds.add(id);
+    }
+    var frame = new Frame(name, false, parent != null ? parent.elementIds : null);
+    if (parent != null && parent.title != null) {
+      // Inline content of title
+      frame.title = parent.title;
+    } else if (parent != null
+        && parent.topic
+        && !parent.hasTitle
+        && isType(name, attrs, defaults, TOPIC_TITLE)) {
+      parent.hasTitle = true;
+      frame.title = new StringBuilder();
+      frame.titleOf = parent.titleOf;
+    }
+    return frame;
+  }
+
+  private static void endElement(Frame frame, Map<String, String> titles) {
+    if (frame.title != null && frame.titleOf != null) {
+      titles.replace(frame.titleOf, "", frame.title.toString().replaceAll("\\s+", " ").trim());
+    }
+  }
+
+  private static boolean isType(
+      String name, Map<String, String> attrs, Map<String, String> defaults, String cls) {
+    var classValue = attrs.get(CLASS_ATTR);
+    if (classValue == null && defaults != null) {
+      classValue = defaults.get(name);
+    }
+    if (classValue == null) {
+      return name.equals(cls.split("/")[1].trim());
+    }
+    return classValue.contains(cls);
+  }
+
+  private static boolean isInTitle(Deque<Frame> stack) {
+    return !stack.isEmpty() && stack.peek().title != null;
+  }
+
+  private static void readAttributes(
+      URI uri,
+      Map<String, String> attrs,
+      Set<String> keys,
+      Set<URI> references,
+      Set<String> keyrefs) {
+    var external = "external".equals(attrs.get(SCOPE_ATTR));
+    for (Map.Entry<String, String> attr : attrs.entrySet()) {
+      var localName = getLocalName(attr.getKey());
+      var value = attr.getValue();
+      if (attr.getKey().equals(KEYS_ATTR)) {
+        for (String key : value.trim().split("\\s+")) {
+          if (!key.isEmpty()) {
+            keys.add(key);
+          }
+        }
+      } else if (REFERENCE_ATTRS.contains(localName) && !external) {
+        try {
+          var target = stripFragment(uri.resolve(new URI(value)));
+          if ("file".equals(target.getScheme())) {
+            references.add(target);
+          }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+          // Invalid references are reported by validation
+        }
+      } else if (KEYREF_ATTRS.contains(localName)) {
+        var key = value.trim();
+        if (key.indexOf('/') != -1) {
+          key = key.substring(0, key.indexOf('/'));
+        }
+        if (!key.isEmpty()) {
+          keyrefs.add(key);
+        }
+      }
+    }
+  }
+
+  private static String getLocalName(String name) {
+    var i = name.indexOf(':');
+    return i != -1 ? name.substring(i + 1) : name;
+  }
+
+  private static String text(XmlLexer lexer) {
+    return new String(lexer.getTextBuffer(), lexer.getTextStart(), lexer.getTextLength());
+  }
+
+  private static void appendReference(StringBuilder buf, XmlLexer lexer) {
+    var ref = text(lexer);
+    var name = ref.substring(1, ref.length() - (ref.endsWith(";") ? 1 : 0));
+    if (name.startsWith("#x")) {
+      appendCodePoint(buf, name.substring(2), 16, ref);
+    } else if (name.startsWith("#")) {
+      appendCodePoint(buf, name.substring(1), 10, ref);
+    } else {
+      switch (name) {
+        case "lt" -> buf.append('<');
+        case "gt" -> buf.append('>');
+        case "amp" -> buf.append('&');
+        case "quot" -> buf.append('"');
+        case "apos" -> buf.append('\'');
+        default -> buf.append(ref);
+      }
+    }
+  }
+
+  private static void appendCodePoint(StringBuilder buf, String value, int radix, String ref) {
+    try {
+      buf.appendCodePoint(Integer.parseInt(value, radix));
+    } catch (IllegalArgumentException e) {
+      buf.append(ref);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.elovirta.dita;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * File modification time and size, used to detect changes to files read from disk.
+ *
+ * @param modified last modification time
+ * @param size file size in bytes
+ */
+record FileStamp(FileTime modified, long size) {
+
+  /**
+   * Read file stamp.
+   *
+   * @return file stamp, {@code null} if file cannot be read
+   */
+  static FileStamp of(URI uri) {
+    try {
+      var attributes = Files.readAttributes(Paths.get(uri), BasicFileAttributes.class);
+      return new FileStamp(attributes.lastModifiedTime(), attributes.size());
+    } catch (IOException | IllegalArgumentException | FileSystemNotFoundException e) {
+      return null;
+    }
+  }
+}
@@ -1,15 +1,17 @@
 package com.elovirta.dita;
 
 import static com.elovirta.dita.Utils.*;
-import static com.elovirta.dita.xml.XmlSerializer.LOC_NAMESPACE;
 import static net.sf.saxon.s9api.streams.Steps.*;
 
+import com.elovirta.dita.xml.LocationTable;
 import java.net.URI;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import net.sf.saxon.s9api.QName;
+import java.util.concurrent.atomic.AtomicLong;
 import net.sf.saxon.s9api.XdmNode;
 import org.eclipse.lsp4j.Location;
 import org.slf4j.Logger;
@@ -22,40 +24,71 @@ public class KeyManager {
   private static final String HREF_ATTR = "href";
 
   private volatile Map<String, KeyDefinition> keyDefinitions = Collections.emptyMap();
+  private final AtomicLong version = new AtomicLong();
 
-  public void read(URI uri, XdmNode map) {
+  /**
+   * Read key definitions from a merged map.
+   *
+   * @return changes to the key space compared to previous key definitions
+   */
+  public KeyDiff read(URI uri, XdmNode map) {
     logger.info("Read key definitions {}", uri);
     var keyDefs = map.select(descendant().then(attribute(KEYS_ATTR))).toList();
-    if (!keyDefs.isEmpty()) {
-      Map<String, KeyDefinition> buf = new ConcurrentHashMap<>();
-      for (XdmNode keyDefAttr : keyDefs) {
-        var keys = Set.of(keyDefAttr.getStringValue().trim().split("\\s+"));
-        var keyDef = keyDefAttr.getParent();
-        for (String key : keys) {
-          if (!buf.containsKey(key)) {
-            var target =
-                keyDef.attribute(HREF_ATTR) != null
-                    ? uri.resolve(keyDef.attribute(HREF_ATTR))
-                    : null;
-            var text =
-                keyDef
-                    .select(
-                        child(MAP_TOPICMETA)
-                            .then(child(TOPIC_KEYWORDS).then(child(TOPIC_KEYWORD).first())))
-                    .asOptionalString()
-                    .orElse(null);
-            var navtitle =
-                keyDef
-                    .select(child(MAP_TOPICMETA).then(child(TOPIC_NAVTITLE).first()))
-                    .asOptionalString()
-                    .orElse(null);
-            var keyDefinition = new KeyDefinition(uri, key, keyDef, target, text, navtitle);
-            buf.put(key, keyDefinition);
-          }
+    Map<String, KeyDefinition> buf = new ConcurrentHashMap<>();
+    for (XdmNode keyDefAttr : keyDefs) {
+      var keys = Set.of(keyDefAttr.getStringValue().trim().split("\\s+"));
+      var keyDef = keyDefAttr.getParent();
+      for (String key : keys) {
+        if (!buf.containsKey(key)) {
+          var target =
+              keyDef.attribute(HREF_ATTR) != null ? uri.resolve(keyDef.attribute(HREF_ATTR)) : null;
+          var text =
+              keyDef
+                  .select(
+                      child(MAP_TOPICMETA)
+                          .then(child(TOPIC_KEYWORDS).then(child(TOPIC_KEYWORD).first())))
+                  .asOptionalString()
+                  .orElse(null);
+          var navtitle =
+              keyDef
+                  .select(child(MAP_TOPICMETA).then(child(TOPIC_NAVTITLE).first()))
+                  .asOptionalString()
+                  .orElse(null);
+          var keyDefinition = new KeyDefinition(uri, key, keyDef, target, text, navtitle);
+          buf.put(key, keyDefinition);
         }
       }
-      keyDefinitions = buf;
     }
+    var diff = diff(keyDefinitions, buf);
+    keyDefinitions = buf;
+    if (!diff.isEmpty()) {
+      logger.debug("Key space changed: {}", diff);
+      version.incrementAndGet();
+    }
+    return diff;
+  }
+
+  /** Compare key spaces by key existence and target. */
+  static KeyDiff diff(Map<String, KeyDefinition> previous, Map<String, KeyDefinition> current) {
+    var added = new HashSet<String>();
+    var retargeted = new HashSet<String>();
+    current.forEach(
+        (key, keyDefinition) -> {
+          var previousDefinition = previous.get(key);
+          if (previousDefinition == null) {
+            added.add(key);
+          } else if (!Objects.equals(previousDefinition.target(), keyDefinition.target())) {
+            retargeted.add(key);
+          }
+        });
+    var removed = new HashSet<>(previous.keySet());
+    removed.removeAll(current.keySet());
+    return new KeyDiff(Set.copyOf(added), Set.copyOf(removed), Set.copyOf(retargeted));
+  }
+
+  /** Key space version, incremented when keys are added, removed, or retargeted. */
+  public long getVersion() {
+    return version.get();
   }
 
   public KeyDefinition get(String key) {
@@ -70,12 +103,34 @@ public class KeyManager {
     return keyDefinitions.entrySet();
   }
 
+  /**
+   * Changes to the key space that affect key reference resolution. Changes to key text or navtitle
+   * are not included.
+   *
+   * @param added keys that were not defined before
+   * @param removed keys that are no longer defined
+   * @param retargeted keys whose target changed
+   */
+  public record KeyDiff(Set<String> added, Set<String> removed, Set<String> retargeted) {
+    static final KeyDiff EMPTY = new KeyDiff(Set.of(), Set.of(), Set.of());
+
+    public boolean isEmpty() {
+      return added.isEmpty() && removed.isEmpty() && retargeted.isEmpty();
+    }
+
+    /** All added, removed, and retargeted keys. */
+    public Set<String> keys() {
+      var res = new HashSet<String>(added);
+      res.addAll(removed);
+      res.addAll(retargeted);
+      return res;
+    }
+  }
+
   public record KeyDefinition(
       URI mapUri, String key, XdmNode definition, URI target, String text, String navtitle) {
     public Location location() {
-      return new Location(
-          mapUri().toString(),
-          Utils.parseRange(this.definition().getAttributeValue(new QName(LOC_NAMESPACE, "elem"))));
+      return new Location(mapUri().toString(), LocationTable.getElementRange(this.definition()));
     }
   }
 }
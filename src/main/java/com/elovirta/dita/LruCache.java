@@ -0,0 +1,96 @@
+package com.elovirta.dita;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least recently used cache bounded by total weight of values.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class LruCache<K, V> {
+
+  private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final ToLongFunction<V> weigher;
+  private final BiConsumer<K, V> evictionListener;
+  private long budget;
+  private long weight;
+  private long evictions;
+
+  private record Weighted<V>(V value, long weight) {}
+
+  /**
+   * Create cache.
+   *
+   * @param budget maximum total weight of values
+   * @param weigher function to calculate value weight
+   * @param evictionListener listener called for evicted entries
+   */
+  LruCache(long budget, ToLongFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+    this.budget = budget;
+    this.weigher = weigher;
+    this.evictionListener = evictionListener;
+  }
+
+  synchronized V get(K key) {
+    var entry = entries.get(key);
+    return entry != null ? entry.value() : null;
+  }
+
+  synchronized boolean containsKey(K key) {
+    return entries.containsKey(key);
+  }
+
+  /** Add value and evict least recently used entries until cache is within budget. */
+  synchronized void put(K key, V value) {
+    var entry = new Weighted<>(value, weigher.applyAsLong(value));
+    var previous = entries.put(key, entry);
+    if (previous != null) {
+      weight -= previous.weight();
+    }
+    weight += entry.weight();
+    evict();
+  }
+
+  synchronized V remove(K key) {
+    var entry = entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    weight -= entry.weight();
+    return entry.value();
+  }
+
+  /** Set maximum total weight and evict entries over the new budget. */
+  synchronized void setBudget(long budget) {
+    this.budget = budget;
+    evict();
+  }
+
+  private void evict() {
+    var it = entries.entrySet().iterator();
+    // Most recently added entry is kept even if it alone exceeds budget
+    while (weight > budget && entries.size() > 1 && it.hasNext()) {
+      Map.Entry<K, Weighted<V>> eldest = it.next();
+      it.remove();
+      weight -= eldest.getValue().weight();
+      evictions++;
+      evictionListener.accept(eldest.getKey(), eldest.getValue().value());
+    }
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized long weight() {
+    return weight;
+  }
+
+  synchronized long evictions() {
+    return evictions;
+  }
+}
@@ -0,0 +1,206 @@
+package com.elovirta.dita;
+
+import static net.sf.saxon.s9api.streams.Predicates.isElement;
+import static net.sf.saxon.s9api.streams.Steps.child;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merge submaps into a root map. Each merged submap branch is cached by submap and root map URI,
+ * and reused while the submap and all submaps it references are unchanged. When a submap changes,
+ * on disk or in the editor, only the branch from the root map to the changed submap is merged
+ * again.
+ */
+final class MapMerger {
+
+  private static final Logger logger = LoggerFactory.getLogger(MapMerger.class);
+
+  /** Extension function that returns merged submap content. */
+  static final QName MERGE_SUBMAP = new QName("merge:", "submap");
+
+  private static final QName ROOT_BASE_URI = new QName("root-base-uri");
+  private static final String STYLESHEET = "/xslt/merge.xsl";
+
+  /** Maximum number of cached submap branches. */
+  private static final long BRANCH_CACHE_SIZE = 1_000;
+
+  /** Reader for parsed documents and their versions. */
+  interface DocumentReader {
+    XdmNode read(URI uri) throws IOException;
+
+    /**
+     * Get document version. Versions are compared with {@link Object#equals(Object)} and should be
+     * small, as cached branches keep them instead of document trees.
+     *
+     * @return document version, {@code null} if document cannot be read
+     */
+    Object version(URI uri);
+  }
+
+  private record BranchKey(URI submap, URI rootMap) {}
+
+  /**
+   * Merged submap branch.
+   *
+   * @param versions versions of submap and all submaps it references
+   * @param content merged submap content
+   */
+  private record Branch(Map<URI, Object> versions, XdmValue content) {}
+
+  /**
+   * Submap merge in progress.
+   *
+   * @param submap submap URI
+   * @param versions versions of documents read during merge
+   */
+  private record Merge(URI submap, Map<URI, Object> versions) {}
+
+  private final DocumentReader documentReader;
+  private final XsltExecutable mergeExecutable;
+  private final LruCache<BranchKey, Branch> branches =
+      new LruCache<>(
+          BRANCH_CACHE_SIZE,
+          branch -> 1,
+          (key, branch) -> logger.debug("Evict merged submap {}", key.submap()));
+
+  /** Submap merges in progress in the current thread, innermost last. */
+  private final ThreadLocal<Deque<Merge>> merges = ThreadLocal.withInitial(ArrayDeque::new);
+
+  private final LongAdder merged = new LongAdder();
+
+  /**
+   * Create map merger and register submap merge function with processor.
+   *
+   * @param processor processor to compile merge stylesheet with
+   * @param documentReader reader for submaps
+   */
+  MapMerger(Processor processor, DocumentReader documentReader) {
+    this.documentReader = documentReader;
+    processor.registerExtensionFunction(new MergeSubmapFunction());
+    try (InputStream in = getClass().getResourceAsStream(STYLESHEET)) {
+      this.mergeExecutable =
+          processor.newXsltCompiler().compile(new StreamSource(in, "classpath:" + STYLESHEET));
+    } catch (SaxonApiException | IOException e) {
+      throw new RuntimeException("Failed to parse classpath:" + STYLESHEET, e);
+    }
+  }
+
+  /** Merge submaps into map. */
+  XdmNode merge(XdmNode src) {
+    try {
+      var transformer = mergeExecutable.load();
+      transformer.setSource(src.getUnderlyingNode());
+      XdmDestination dst = new XdmDestination();
+      transformer.setDestination(dst);
+      transformer.transform();
+      return dst.getXdmNode();
+    } catch (SaxonApiException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Number of submap branches merged instead of reused from cache. */
+  long merged() {
+    return merged.sum();
+  }
+
+  private XdmValue mergeSubmap(URI submap, URI rootMap) throws SaxonApiException {
+    var inProgress = merges.get();
+    if (inProgress.stream().anyMatch(merge -> merge.submap().equals(submap))) {
+      logger.warn("Map reference loop to {}", submap);
+      return XdmEmptySequence.getInstance();
+    }
+    var key = new BranchKey(submap, rootMap);
+    var branch = branches.get(key);
+    if (branch == null || !isCurrent(branch.versions())) {
+      branch = mergeBranch(submap, rootMap);
+      branches.put(key, branch);
+    }
+    var parent = inProgress.peekLast();
+    if (parent != null) {
+      parent.versions().putAll(branch.versions());
+    }
+    return branch.content();
+  }
+
+  private Branch mergeBranch(URI submap, URI rootMap) throws SaxonApiException {
+    logger.debug("Merge submap {}", submap);
+    var versions = new HashMap<URI, Object>();
+    var inProgress = merges.get();
+    inProgress.addLast(new Merge(submap, versions));
+    try {
+      // Version before reading, so that a concurrent change invalidates the branch
+      versions.put(submap, documentReader.version(submap));
+      var doc = documentReader.read(submap);
+      var transformer = mergeExecutable.load30();
+      transformer.setGlobalContextItem(doc);
+      transformer.setStylesheetParameters(Map.of(ROOT_BASE_URI, new XdmAtomicValue(rootMap)));
+      var content =
+          transformer.applyTemplates(
+              doc.select(child(isElement()).then(child(isElement()))).asXdmValue());
+      merged.increment();
+      return new Branch(Collections.unmodifiableMap(versions), content);
+    } catch (IOException e) {
+      throw new SaxonApiException("Failed to read " + submap, e);
+    } finally {
+      inProgress.removeLast();
+      if (inProgress.isEmpty()) {
+        merges.remove();
+      }
+    }
+  }
+
+  /** Test if documents are unchanged since they were read. */
+  private boolean isCurrent(Map<URI, Object> versions) {
+    for (Map.Entry<URI, Object> version : versions.entrySet()) {
+      if (version.getValue() == null
+          || !version.getValue().equals(documentReader.version(version.getKey()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Merge submap and return merged content of the submap root element. */
+  private class MergeSubmapFunction implements ExtensionFunction {
+    @Override
+    public QName getName() {
+      return MERGE_SUBMAP;
+    }
+
+    @Override
+    public SequenceType getResultType() {
+      return SequenceType.makeSequenceType(ItemType.ANY_NODE, OccurrenceIndicator.ZERO_OR_MORE);
+    }
+
+    @Override
+    public SequenceType[] getArgumentTypes() {
+      return new SequenceType[] {
+        SequenceType.makeSequenceType(ItemType.ANY_URI, OccurrenceIndicator.ZERO_OR_ONE),
+        SequenceType.makeSequenceType(ItemType.ANY_URI, OccurrenceIndicator.ONE)
+      };
+    }
+
+    @Override
+    public XdmValue call(XdmValue[] arguments) throws SaxonApiException {
+      if (arguments[0].isEmpty()) {
+        return XdmEmptySequence.getInstance();
+      }
+      var submap = URI.create(arguments[0].itemAt(0).getStringValue());
+      var rootMap = URI.create(arguments[1].itemAt(0).getStringValue());
+      return mergeSubmap(submap, rootMap);
+    }
+  }
+}
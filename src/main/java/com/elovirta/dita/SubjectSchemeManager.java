@@ -24,25 +24,43 @@ public class SubjectSchemeManager {
   private static final QName ATTRIBUTE_QNAME_NAME = QName.fromClarkName(ATTRIBUTE_NAME_NAME);
   private static final String ANY_ELEMENT = "*";
 
+  /**
+   * Attribute bindings of subject schemes. Bindings are built by {@link #read(URI, XdmNode)} and
+   * published as a whole, they are not modified after publication.
+   */
+  private record Bindings(
+      Map<QName, Map<String, Set<SubjectDefinition>>> bindingMap,
+      Map<QName, Map<String, Set<String>>> validValuesMap,
+      Map<QName, Map<String, String>> defaultValueMap) {
+    Bindings() {
+      this(new HashMap<>(), new HashMap<>(), new HashMap<>());
+    }
+  }
+
   private volatile Map<String, SubjectDefinition> subjectDefinitions = Collections.emptyMap();
-  private final Map<QName, Map<String, Set<SubjectDefinition>>> bindingMap = new HashMap<>();
-  private final Map<QName, Map<String, Set<String>>> validValuesMap = new HashMap<>();
-  private final Map<QName, Map<String, String>> defaultValueMap = new HashMap<>();
+  private volatile Bindings bindings = new Bindings();
 
   public void read(URI uri, XdmNode map) {
     logger.info("Read subject scheme definitions {}", uri);
-    subjectDefinitions = getSubjectDefinition(map);
-
+    var definitions = getSubjectDefinition(map);
+    var buf = new Bindings();
     map.select(descendant(SUBJECTSCHEME_ENUMERATIONDEF))
-        .forEach(enumerationDef -> processEnumerationDef(subjectDefinitions, enumerationDef));
-    logger.debug("subjectDefinitions: {}", subjectDefinitions);
-    logger.debug("bindingMap: {}", bindingMap);
-    logger.debug("validValuesMap: {}", validValuesMap);
-    logger.debug("defaultValueMap: {}", defaultValueMap);
+        .forEach(enumerationDef -> processEnumerationDef(definitions, enumerationDef, buf));
+    logger.debug("subjectDefinitions: {}", definitions);
+    logger.debug("bindingMap: {}", buf.bindingMap());
+    logger.debug("validValuesMap: {}", buf.validValuesMap());
+    logger.debug("defaultValueMap: {}", buf.defaultValueMap());
+    // Readers on other threads see either the previous or the new bindings, never a partial read
+    subjectDefinitions = definitions;
+    bindings = buf;
   }
 
-  public void processEnumerationDef(
-      final Map<String, SubjectDefinition> subjectDefinitions, final XdmNode enumerationDef) {
+  private void processEnumerationDef(
+      final Map<String, SubjectDefinition> subjectDefinitions,
+      final XdmNode enumerationDef,
+      final Bindings buf) {
+    final var bindingMap = buf.bindingMap();
+    final var defaultValueMap = buf.defaultValueMap();
     final String elementName =
         enumerationDef
             .select(
@@ -97,7 +115,8 @@ public class SubjectSchemeManager {
             final Set<SubjectDefinition> A = S.getOrDefault(elementName, new HashSet<>());
             if (!A.contains(subTree)) {
               if (attributeName != null) {
-                putValuePairsIntoMap(subTree, elementName, attributeName, keyValue);
+                putValuePairsIntoMap(
+                    buf.validValuesMap(), subTree, elementName, attributeName, keyValue);
               }
             }
             A.add(subTree);
@@ -112,12 +131,14 @@ public class SubjectSchemeManager {
   /**
    * Populate valid values map
    *
+   * @param validValuesMap valid values map to populate
    * @param subtree subject scheme definition element
    * @param elementName element name
    * @param attName attribute name
    * @param category enumeration category name
    */
   private void putValuePairsIntoMap(
+      final Map<QName, Map<String, Set<String>>> validValuesMap,
       final SubjectDefinition subtree,
       final String elementName,
       final QName attName,
@@ -186,7 +207,7 @@ public class SubjectSchemeManager {
   }
 
   public Set<String> values(QName attributeName, String elementName) {
-    var elements = validValuesMap.getOrDefault(attributeName, Collections.emptyMap());
+    var elements = bindings.validValuesMap().getOrDefault(attributeName, Collections.emptyMap());
     logger.debug("elements: {}", elements);
     return elements.getOrDefault(
         elementName, elements.getOrDefault(ANY_ELEMENT, Collections.emptySet()));
@@ -196,12 +217,27 @@ public class SubjectSchemeManager {
     return subjectDefinitions.containsKey(key);
   }
 
+  /**
+   * Get valid values of an attribute.
+   *
+   * @return copy of valid values by element name, {@code null} if attribute is not controlled
+   */
+  public Map<String, Set<String>> getValidValues(QName attributeName) {
+    var elements = bindings.validValuesMap().get(attributeName);
+    if (elements == null) {
+      return null;
+    }
+    var res = new HashMap<String, Set<String>>();
+    elements.forEach((element, values) -> res.put(element, Set.copyOf(values)));
+    return res;
+  }
+
   public boolean hasAttribute(QName attributeName) {
-    return validValuesMap.containsKey(attributeName);
+    return bindings.validValuesMap().containsKey(attributeName);
   }
 
   public Set<QName> attributes() {
-    return validValuesMap.keySet();
+    return Collections.unmodifiableSet(bindings.validValuesMap().keySet());
   }
 
   public record SubjectDefinition(
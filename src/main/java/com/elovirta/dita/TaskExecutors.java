@@ -0,0 +1,261 @@
+package com.elovirta.dita;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dedicated executors for language server work. Each workload class has its own bounded thread
+ * pool, so long running background work cannot starve interactive requests.
+ *
+ * <p>In virtual thread mode, interactive and validation work run each task in its own virtual
+ * thread. Blocking on disk I/O then does not tie up a platform thread, and concurrent parsing is
+ * bounded by the parser pool instead. Background work always runs in a bounded low priority pool.
+ * Virtual threads require Java 21; on older runtimes platform threads are used.
+ */
+public class TaskExecutors {
+
+  private static final Logger logger = LoggerFactory.getLogger(TaskExecutors.class);
+
+  private static final long SLOW_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  /** Workload class, in priority order. */
+  public enum Workload {
+    /** Hover, completion, definition, and code actions. */
+    INTERACTIVE("dita-interactive", Thread.NORM_PRIORITY + 2),
+    /** Parse and validation of documents changed in the editor. */
+    VALIDATION("dita-validation", Thread.NORM_PRIORITY),
+    /** Root map loading, revalidation of dependent documents, and preview rendering. */
+    BACKGROUND("dita-background", Thread.MIN_PRIORITY);
+
+    private final String threadName;
+    private final int priority;
+
+    Workload(String threadName, int priority) {
+      this.threadName = threadName;
+      this.priority = priority;
+    }
+  }
+
+  private final Map<Workload, MonitoredExecutor> executors = new EnumMap<>(Workload.class);
+
+  public TaskExecutors() {
+    this(false);
+  }
+
+  /**
+   * Create executors.
+   *
+   * @param virtualThreads run interactive and validation work in virtual threads
+   */
+  public TaskExecutors(boolean virtualThreads) {
+    this(Runtime.getRuntime().availableProcessors(), virtualThreads);
+  }
+
+  /**
+   * Create executors.
+   *
+   * @param processors number of processors to size thread pools for
+   * @param virtualThreads run interactive and validation work in virtual threads
+   */
+  TaskExecutors(int processors, boolean virtualThreads) {
+    var virtualThreadFactory = virtualThreads ? getVirtualThreadFactory() : null;
+    if (virtualThreads && virtualThreadFactory == null) {
+      logger.warn("Virtual threads are not supported on Java {}", Runtime.version().feature());
+    } else if (virtualThreads) {
+      logger.info("Run interactive and validation work in virtual threads");
+    }
+    add(Workload.INTERACTIVE, Math.max(2, processors / 4), virtualThreadFactory);
+    add(Workload.VALIDATION, Math.max(1, processors - 1), virtualThreadFactory);
+    add(Workload.BACKGROUND, Math.max(1, processors / 2), null);
+  }
+
+  private void add(Workload workload, int threads, ThreadFactory virtualThreadFactory) {
+    var executor =
+        virtualThreadFactory != null
+            ? new MonitoredExecutor(workload, 0, newThreadPerTaskExecutor(virtualThreadFactory))
+            : new MonitoredExecutor(workload, threads, newThreadPool(workload, threads));
+    executors.put(workload, executor);
+  }
+
+  /** Test if interactive and validation work run in virtual threads. */
+  public boolean isVirtualThreads() {
+    return executors.get(Workload.VALIDATION).threads == 0;
+  }
+
+  /** Get executor for workload class. */
+  public Executor get(Workload workload) {
+    return executors.get(workload);
+  }
+
+  /** Get statistics of workload class executor. */
+  public Stats getStats(Workload workload) {
+    return executors.get(workload).getStats();
+  }
+
+  /** Get statistics of all executors, in priority order. */
+  public List<Stats> getStats() {
+    return Arrays.stream(Workload.values()).map(this::getStats).toList();
+  }
+
+  /** Shut down executors. Queued tasks are still run, but new tasks are rejected. */
+  public void shutdown() {
+    executors.values().forEach(executor -> executor.delegate.shutdown());
+  }
+
+  /**
+   * Executor statistics.
+   *
+   * @param workload workload class
+   * @param threads maximum number of threads, {@code 0} if each task runs in a new virtual thread
+   * @param active number of threads running a task
+   * @param queued number of tasks waiting for a thread
+   * @param completed number of completed tasks
+   * @param totalWaitMillis total time tasks spent in the queue
+   * @param maxWaitMillis longest time a task spent in the queue
+   * @param totalRunMillis total time spent running tasks
+   */
+  public record Stats(
+      Workload workload,
+      int threads,
+      int active,
+      int queued,
+      long completed,
+      long totalWaitMillis,
+      long maxWaitMillis,
+      long totalRunMillis) {}
+
+  private static ExecutorService newThreadPool(Workload workload, int threads) {
+    var executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            threadFactory(workload));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static ThreadFactory threadFactory(Workload workload) {
+    var count = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, workload.threadName + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(workload.priority);
+      return thread;
+    };
+  }
+
+  /**
+   * Get virtual thread factory. Virtual thread API is accessed reflectively, because the code is
+   * compiled for Java 17.
+   *
+   * @return virtual thread factory, {@code null} if virtual threads are not supported
+   */
+  private static ThreadFactory getVirtualThreadFactory() {
+    try {
+      var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      var builderType = Class.forName("java.lang.Thread$Builder");
+      builder =
+          builderType
+              .getMethod("name", String.class, long.class)
+              .invoke(builder, "dita-virtual-", 1L);
+      return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+    try {
+      return (ExecutorService)
+          Executors.class
+              .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+              .invoke(null, threadFactory);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Failed to create virtual thread executor", e);
+    }
+  }
+
+  /** Executor that records queue depth, queue latency, and run time of tasks. */
+  private static final class MonitoredExecutor implements Executor {
+    private final Workload workload;
+    private final int threads;
+    private final ExecutorService delegate;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder totalRunNanos = new LongAdder();
+
+    MonitoredExecutor(Workload workload, int threads, ExecutorService delegate) {
+      this.workload = workload;
+      this.threads = threads;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      var submittedAt = System.nanoTime();
+      submitted.increment();
+      try {
+        delegate.execute(
+            () -> {
+              started.increment();
+              var start = System.nanoTime();
+              var wait = start - submittedAt;
+              totalWaitNanos.add(wait);
+              maxWaitNanos.accumulate(wait);
+              if (wait > SLOW_WAIT_NANOS) {
+                logger.debug(
+                    "Task waited {} ms in {} queue, {} queued",
+                    TimeUnit.NANOSECONDS.toMillis(wait),
+                    workload,
+                    submitted.sum() - started.sum());
+              }
+              try {
+                command.run();
+              } finally {
+                totalRunNanos.add(System.nanoTime() - start);
+                completed.increment();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        submitted.decrement();
+        throw e;
+      }
+    }
+
+    Stats getStats() {
+      var startedCount = started.sum();
+      var completedCount = completed.sum();
+      return new Stats(
+          workload,
+          threads,
+          (int) (startedCount - completedCount),
+          (int) (submitted.sum() - startedCount),
+          completedCount,
+          TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum()),
+          TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+          TimeUnit.NANOSECONDS.toMillis(totalRunNanos.sum()));
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package com.elovirta.dita;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+/**
+ * Piece table for an open text document. Range edits are applied against the piece list without
+ * copying document content; a contiguous {@code char[]} is only materialized when the content is
+ * needed for parsing.
+ *
+ * <p>Lines are separated by LF. CRLF line endings work as the CR is treated as a regular character
+ * at the end of the line.
+ */
+public class TextDocumentBuffer {
+
+  private record Piece(boolean added, int start, int length, int lineBreaks) {}
+
+  private char[] original;
+  private int[] originalLineBreaks;
+  private final StringBuilder added = new StringBuilder();
+  private int[] addedLineBreaks = new int[16];
+  private int addedLineBreakCount = 0;
+  private final List<Piece> pieces = new ArrayList<>();
+  private int length;
+  private char[] snapshot;
+
+  public TextDocumentBuffer(String text) {
+    reset(text.toCharArray());
+  }
+
+  /** Replace the full document content. */
+  public void setText(String text) {
+    reset(text.toCharArray());
+  }
+
+  /**
+   * Replace a range in the document.
+   *
+   * @param range range to replace, in LSP line and UTF-16 character coordinates
+   * @param text replacement text
+   */
+  public void replace(Range range, String text) {
+    var start = offsetOf(range.getStart());
+    var end = Math.max(start, offsetOf(range.getEnd()));
+    replace(start, end, text);
+  }
+
+  /**
+   * Replace a range in the document.
+   *
+   * @param start start offset, inclusive
+   * @param end end offset, exclusive
+   * @param text replacement text
+   */
+  public void replace(int start, int end, String text) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Range " + start + "-" + end + " out of bounds for length " + length);
+    }
+    snapshot = null;
+    var first = split(start);
+    var last = split(end);
+    pieces.subList(first, last).clear();
+    if (!text.isEmpty()) {
+      var addedStart = added.length();
+      append(text);
+      var piece =
+          new Piece(
+              true,
+              addedStart,
+              text.length(),
+              countLineBreaks(addedLineBreaks, addedLineBreakCount, addedStart, added.length()));
+      pieces.add(first, piece);
+    }
+    length += text.length() - (end - start);
+  }
+
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Get document content as a contiguous array. The returned array is shared and must not be
+   * modified. Materializing the content compacts the piece table into a single piece.
+   */
+  public char[] toCharArray() {
+    if (snapshot == null) {
+      var buf = new char[length];
+      var offset = 0;
+      for (Piece piece : pieces) {
+        if (piece.added()) {
+          added.getChars(piece.start(), piece.start() + piece.length(), buf, offset);
+        } else {
+          System.arraycopy(original, piece.start(), buf, offset, piece.length());
+        }
+        offset += piece.length();
+      }
+      reset(buf);
+    }
+    return snapshot;
+  }
+
+  @Override
+  public String toString() {
+    return new String(toCharArray());
+  }
+
+  /**
+   * Convert LSP position to document offset. Character positions past the end of the line are
+   * clamped to the line end, excluding the line terminator.
+   */
+  int offsetOf(Position position) {
+    var line = position.getLine();
+    var lineStart = lineStartOffset(line);
+    var lineEnd = length;
+    if (line >= 0 && line < lineBreakCount()) {
+      lineEnd = lineStartOffset(line + 1) - 1;
+      if (lineEnd > lineStart && charAt(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+    }
+    return Math.min(lineStart + Math.max(0, position.getCharacter()), lineEnd);
+  }
+
+  private int lineBreakCount() {
+    var count = 0;
+    for (Piece piece : pieces) {
+      count += piece.lineBreaks();
+    }
+    return count;
+  }
+
+  private char charAt(int offset) {
+    var pieceStart = 0;
+    for (Piece piece : pieces) {
+      if (offset < pieceStart + piece.length()) {
+        var index = piece.start() + offset - pieceStart;
+        return piece.added() ? added.charAt(index) : original[index];
+      }
+      pieceStart += piece.length();
+    }
+    throw new IndexOutOfBoundsException("Offset " + offset + " out of bounds for length " + length);
+  }
+
+  private int lineStartOffset(int line) {
+    if (line <= 0) {
+      return 0;
+    }
+    var lines = 0;
+    var offset = 0;
+    for (Piece piece : pieces) {
+      if (lines + piece.lineBreaks() >= line) {
+        var lineBreaks = piece.added() ? addedLineBreaks : originalLineBreaks;
+        var count = piece.added() ? addedLineBreakCount : originalLineBreaks.length;
+        var index = lowerBound(lineBreaks, count, piece.start()) + (line - lines - 1);
+        return offset + (lineBreaks[index] - piece.start()) + 1;
+      }
+      lines += piece.lineBreaks();
+      offset += piece.length();
+    }
+    return length;
+  }
+
+  /**
+   * Split piece at document offset.
+   *
+   * @return index of the first piece that starts at or after the offset
+   */
+  private int split(int offset) {
+    var pieceStart = 0;
+    for (int i = 0; i < pieces.size(); i++) {
+      var piece = pieces.get(i);
+      if (offset == pieceStart) {
+        return i;
+      }
+      var pieceEnd = pieceStart + piece.length();
+      if (offset < pieceEnd) {
+        var headLength = offset - pieceStart;
+        var head = slice(piece, piece.start(), headLength);
+        var tail = slice(piece, piece.start() + headLength, piece.length() - headLength);
+        pieces.set(i, head);
+        pieces.add(i + 1, tail);
+        return i + 1;
+      }
+      pieceStart = pieceEnd;
+    }
+    return pieces.size();
+  }
+
+  private Piece slice(Piece piece, int start, int length) {
+    var lineBreaks =
+        piece.added()
+            ? countLineBreaks(addedLineBreaks, addedLineBreakCount, start, start + length)
+            : countLineBreaks(originalLineBreaks, originalLineBreaks.length, start, start + length);
+    return new Piece(piece.added(), start, length, lineBreaks);
+  }
+
+  private void append(String text) {
+    var base = added.length();
+    added.append(text);
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        if (addedLineBreakCount == addedLineBreaks.length) {
+          addedLineBreaks = Arrays.copyOf(addedLineBreaks, addedLineBreaks.length * 2);
+        }
+        addedLineBreaks[addedLineBreakCount++] = base + i;
+      }
+    }
+  }
+
+  private void reset(char[] content) {
+    original = content;
+    originalLineBreaks = lineBreaks(content);
+    added.setLength(0);
+    addedLineBreakCount = 0;
+    pieces.clear();
+    if (content.length > 0) {
+      pieces.add(new Piece(false, 0, content.length, originalLineBreaks.length));
+    }
+    length = content.length;
+    snapshot = content;
+  }
+
+  private static int[] lineBreaks(char[] content) {
+    var count = 0;
+    for (char c : content) {
+      if (c == '\n') {
+        count++;
+      }
+    }
+    var res = new int[count];
+    var index = 0;
+    for (int i = 0; i < content.length; i++) {
+      if (content[i] == '\n') {
+        res[index++] = i;
+      }
+    }
+    return res;
+  }
+
+  private static int countLineBreaks(int[] lineBreaks, int count, int start, int end) {
+    return lowerBound(lineBreaks, count, end) - lowerBound(lineBreaks, count, start);
+  }
+
+  /** Find index of the first value greater than or equal to key. */
+  private static int lowerBound(int[] values, int count, int key) {
+    var low = 0;
+    var high = count;
+    while (low < high) {
+      var mid = (low + high) >>> 1;
+      if (values[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
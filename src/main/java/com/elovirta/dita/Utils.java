@@ -1,15 +1,16 @@
 package com.elovirta.dita;
 
-import static com.elovirta.dita.xml.XmlSerializer.*;
 import static javax.xml.XMLConstants.NULL_NS_URI;
 
+import com.elovirta.dita.xml.LocationTable;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.function.Predicate;
-import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.XdmItem;
 import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.s9api.streams.Steps;
@@ -37,6 +38,7 @@ public class Utils {
   }
 
   public static final Predicate<? super XdmNode> TOPIC_TOPIC = cls(" topic/topic ");
+  public static final Predicate<? super XdmNode> TOPIC_TITLE = cls(" topic/title ");
   public static final Predicate<? super XdmNode> MAP_MAP = cls(" map/map ");
   public static final Predicate<? super XdmNode> MAP_TOPICMETA = cls(" map/topicmeta ");
   public static final Predicate<? super XdmNode> TOPIC_KEYWORDS = cls(" topic/keywords ");
@@ -61,14 +63,7 @@ public class Utils {
   public static final String ATTR_TYPE = "type";
 
   public static Range getAttributeRange(XdmNode attr) {
-    var loc =
-        attr.getParent()
-            .getAttributeValue(
-                new QName(
-                    LOC_PREFIX,
-                    LOC_NAMESPACE,
-                    LOC_ATTR_PREFIX + attr.getNodeName().getLocalName()));
-    return parseRange(loc);
+    return LocationTable.getAttributeRange(attr);
   }
 
   public static Range parseRange(String loc) {
@@ -118,6 +113,16 @@ public class Utils {
     }
   }
 
+  /** User cache directory for DITA Language Server. */
+  public static Path getCacheDirectory() {
+    var cacheHome = System.getenv("XDG_CACHE_HOME");
+    var base =
+        cacheHome != null && !cacheHome.isEmpty()
+            ? Paths.get(cacheHome)
+            : Paths.get(System.getProperty("user.home"), ".cache");
+    return base.resolve("dita-language-server");
+  }
+
   public static boolean isDitaMap(XdmNode src) {
     return src.select(Steps.child("map").cat(Steps.child().where(MAP_MAP))).exists();
   }
@@ -0,0 +1,75 @@
+package com.elovirta.dita;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.lsp4j.Diagnostic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memoized validation results. Results are keyed by a hash of the document content and a snapshot
+ * of the validation inputs the document depends on, so reopening a document or switching back to a
+ * previous root map reuses an earlier result.
+ */
+final class ValidationCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(ValidationCache.class);
+
+  /** Default budget as total number of cached diagnostics and results. */
+  private static final long DEFAULT_BUDGET = 50_000;
+
+  /**
+   * Validation cache key.
+   *
+   * @param contentHash hash of document content
+   * @param inputs snapshot of validation inputs, compared by value
+   */
+  record Key(String contentHash, Object inputs) {}
+
+  private final LruCache<Key, List<Diagnostic>> results =
+      new LruCache<>(
+          DEFAULT_BUDGET,
+          diagnostics -> diagnostics.size() + 1L,
+          (key, diagnostics) -> logger.debug("Evict validation results {}", key.contentHash()));
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Get memoized validation results.
+   *
+   * @return validation diagnostics, {@code null} if not memoized
+   */
+  List<Diagnostic> get(Key key) {
+    var res = results.get(key);
+    if (res != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return res;
+  }
+
+  /** Memoize validation results. */
+  void put(Key key, List<Diagnostic> diagnostics) {
+    results.put(key, List.copyOf(diagnostics));
+  }
+
+  /** Number of lookups that found memoized results. */
+  long hits() {
+    return hits.sum();
+  }
+
+  /** Number of lookups that did not find memoized results. */
+  long misses() {
+    return misses.sum();
+  }
+
+  /** Hash document content. */
+  static String hash(char[] content) {
+    var bytes = new String(content).getBytes(StandardCharsets.UTF_8);
+    return HexFormat.of().formatHex(WorkspaceIndexStore.hash(bytes));
+  }
+}
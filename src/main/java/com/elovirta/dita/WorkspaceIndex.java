@@ -0,0 +1,346 @@
+package com.elovirta.dita;
+
+import static com.elovirta.dita.Utils.*;
+import static net.sf.saxon.s9api.streams.Predicates.*;
+import static net.sf.saxon.s9api.streams.Steps.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.streams.Steps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of DITA documents in the workspace. Workspace folders are indexed in the background in
+ * parallel with a streaming scanner, open documents are indexed when they are parsed.
+ */
+public class WorkspaceIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(WorkspaceIndex.class);
+
+  private static final Set<String> EXTENSIONS = Set.of("dita", "ditamap");
+  private static final Set<String> REFERENCE_ATTRS = Set.of("href", "conref");
+  private static final Set<String> KEYREF_ATTRS = Set.of("keyref", "conkeyref");
+  private static final String KEYS_ATTR = "keys";
+  private static final String SCOPE_ATTR = "scope";
+  private static final String STORE_PREFIX = "workspace-index-";
+  private static final String STORE_SUFFIX = ".bin";
+
+  private final DocumentScanner scanner;
+  private final Map<URI, Entry> entries = new ConcurrentHashMap<>();
+  private final ForkJoinPool pool;
+  private final Path storeDirectory;
+  /** Entries read from disk, stamped with the file state they were read from. */
+  private final Map<URI, WorkspaceIndexStore.Stored> stored = new ConcurrentHashMap<>();
+  /** Store file of the last indexed workspace folders. */
+  private volatile Path storeFile;
+  /** Stored entries have changed since they were last written. */
+  private volatile boolean dirty;
+
+  /**
+   * Index entry for a document.
+   *
+   * @param rootId ID of the first topic, {@code null} for maps
+   * @param titles topic titles by topic ID, in document order
+   * @param ids element IDs by topic ID
+   * @param keys keys defined in the document
+   * @param references documents referenced with {@code href} or {@code conref}
+   * @param keyrefs keys referenced with {@code keyref} or {@code conkeyref}
+   */
+  public record Entry(
+      String rootId,
+      Map<String, String> titles,
+      Map<String, List<String>> ids,
+      Set<String> keys,
+      Set<URI> references,
+      Set<String> keyrefs) {}
+
+  public WorkspaceIndex(Supplier<DitaParser> ditaParser) {
+    this(ditaParser, Utils.getCacheDirectory());
+  }
+
+  /**
+   * Create workspace index.
+   *
+   * @param ditaParser parser supplier, used for DTD grammar lookup
+   * @param storeDirectory directory for persisted index, {@code null} to not persist index
+   */
+  public WorkspaceIndex(Supplier<DitaParser> ditaParser, Path storeDirectory) {
+    this.scanner =
+        new DocumentScanner(
+            publicId -> ditaParser.get().getCacheManager().getClassDefaults(publicId));
+    this.pool =
+        new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors(),
+            WorkspaceIndex::newIndexThread,
+            null,
+            false);
+    this.storeDirectory = storeDirectory;
+  }
+
+  /**
+   * Index all DITA documents in workspace folders. Entries of documents already in the index, such
+   * as documents open in the editor, are not replaced. Entries persisted by a previous run are
+   * reused for files that have not changed.
+   *
+   * @param folders workspace folders
+   * @return future that completes when all documents have been indexed
+   */
+  public CompletableFuture<Void> index(Collection<Path> folders) {
+    return CompletableFuture.runAsync(
+        () -> {
+          var start = System.currentTimeMillis();
+          var storeFile = getStoreFile(folders);
+          var previous =
+              storeFile != null
+                  ? WorkspaceIndexStore.read(storeFile)
+                  : Map.<URI, WorkspaceIndexStore.Stored>of();
+          var indexed = new ConcurrentHashMap<URI, WorkspaceIndexStore.Stored>();
+          var scanned = new LongAdder();
+          var files = folders.stream().flatMap(WorkspaceIndex::listFiles).toList();
+          files.parallelStream().forEach(file -> index(file, previous, indexed, scanned));
+          synchronized (this) {
+            stored.clear();
+            stored.putAll(indexed);
+            this.storeFile = storeFile;
+            dirty = !(indexed.isEmpty() && previous.isEmpty());
+          }
+          persist();
+          logger.info(
+              "Indexed {} documents, {} scanned, in {} ms",
+              files.size(),
+              scanned.sum(),
+              System.currentTimeMillis() - start);
+        },
+        pool);
+  }
+
+  /** Create low priority index worker, so that indexing does not slow down editing. */
+  private static ForkJoinWorkerThread newIndexThread(ForkJoinPool pool) {
+    var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  }
+
+  private Path getStoreFile(Collection<Path> folders) {
+    if (storeDirectory == null) {
+      return null;
+    }
+    var key =
+        folders.stream()
+            .map(folder -> folder.toAbsolutePath().normalize().toString())
+            .sorted()
+            .collect(Collectors.joining("\n"));
+    var hash = WorkspaceIndexStore.hash(key.getBytes(StandardCharsets.UTF_8));
+    return storeDirectory.resolve(STORE_PREFIX + HexFormat.of().formatHex(hash) + STORE_SUFFIX);
+  }
+
+  private static Stream<Path> listFiles(Path folder) {
+    if (!Files.isDirectory(folder)) {
+      return Stream.empty();
+    }
+    try (var files = Files.walk(folder)) {
+      return files
+          .filter(Files::isRegularFile)
+          .filter(file -> isDitaFile(file.getFileName().toString()))
+          .toList()
+          .stream();
+    } catch (IOException e) {
+      logger.error("Failed to list {}", folder, e);
+      return Stream.empty();
+    }
+  }
+
+  /** Test if file name has a DITA topic or map extension. */
+  static boolean isDitaFile(String name) {
+    var extension = getExtension(name);
+    return extension != null && EXTENSIONS.contains(extension);
+  }
+
+  private static Predicate<XdmNode> hasLocalName(Set<String> names) {
+    return attr -> names.contains(attr.getNodeName().getLocalName());
+  }
+
+  private void index(
+      Path file,
+      Map<URI, WorkspaceIndexStore.Stored> persisted,
+      Map<URI, WorkspaceIndexStore.Stored> indexed,
+      LongAdder scanned) {
+    var uri = file.toUri();
+    try {
+      var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      var lastModified = attributes.lastModifiedTime().toMillis();
+      var size = attributes.size();
+      var previous = persisted.get(uri);
+      if (previous != null && previous.matches(lastModified, size)) {
+        entries.putIfAbsent(uri, previous.entry());
+        indexed.put(uri, previous);
+        return;
+      }
+      var content = Files.readAllBytes(file);
+      var hash = WorkspaceIndexStore.hash(content);
+      Entry entry;
+      if (previous != null && previous.matches(hash)) {
+        entry = previous.entry();
+      } else {
+        entry = scanner.scan(uri, new String(content, StandardCharsets.UTF_8).toCharArray());
+        scanned.increment();
+      }
+      entries.putIfAbsent(uri, entry);
+      indexed.put(uri, new WorkspaceIndexStore.Stored(lastModified, size, hash, entry));
+    } catch (Exception e) {
+      logger.warn("Failed to index {}: {}", uri, e.getMessage());
+    }
+  }
+
+  /**
+   * Write stored entries to disk, if they have changed since they were last written. Entries of
+   * documents open in the editor are stored as they are on disk.
+   */
+  public synchronized void persist() {
+    if (storeFile != null && dirty) {
+      dirty = false;
+      WorkspaceIndexStore.write(storeFile, new HashMap<>(stored));
+    }
+  }
+
+  /**
+   * Drop stored entry after the file has changed outside the editor. The file is indexed again on
+   * the next run.
+   */
+  public void invalidate(URI uri) {
+    if (stored.remove(uri) != null) {
+      dirty = true;
+    }
+  }
+
+  /** Update index entry from parsed document. */
+  public Entry update(URI uri, XdmNode doc) {
+    var entry = read(uri, doc);
+    entries.put(uri, entry);
+    return entry;
+  }
+
+  /**
+   * Add index entry by scanning document content without a full parse. An existing entry, such as
+   * one read from an open document, is not replaced.
+   *
+   * @return index entry for document
+   */
+  public Entry scan(URI uri, String content) {
+    var entry = scanner.scan(uri, content.toCharArray());
+    var previous = entries.putIfAbsent(uri, entry);
+    return previous != null ? previous : entry;
+  }
+
+  /** Get index entry, {@code null} if document has not been indexed. */
+  public Entry get(URI uri) {
+    return entries.get(uri);
+  }
+
+  public boolean contains(URI uri) {
+    return entries.containsKey(uri);
+  }
+
+  public void remove(URI uri) {
+    entries.remove(uri);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  static Entry read(URI uri, XdmNode doc) {
+    var titles = new LinkedHashMap<String, String>();
+    doc.select(descendant(TOPIC_TOPIC))
+        .forEach(
+            topic -> {
+              var id = topic.attribute(ATTR_ID);
+              if (id != null) {
+                var title =
+                    topic
+                        .select(child(TOPIC_TITLE).first())
+                        .asOptionalString()
+                        .map(value -> value.replaceAll("\\s+", " ").trim())
+                        .orElse("");
+                titles.putIfAbsent(id, title);
+              }
+            });
+    var rootId = titles.isEmpty() ? null : titles.keySet().iterator().next();
+
+    var keys =
+        doc.select(descendant(isElement()).then(attribute(KEYS_ATTR)))
+            .flatMap(attr -> Stream.of(attr.getStringValue().trim().split("\\s+")))
+            .filter(key -> !key.isEmpty())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    var references = new LinkedHashSet<URI>();
+    doc.select(
+            descendant(isElement())
+                .where(not(attributeEq(SCOPE_ATTR, "external")))
+                .then(attribute(hasLocalName(REFERENCE_ATTRS))))
+        .forEach(
+            attr -> {
+              try {
+                var target = stripFragment(uri.resolve(new URI(attr.getStringValue())));
+                if ("file".equals(target.getScheme())) {
+                  references.add(target);
+                }
+              } catch (URISyntaxException e) {
+                // Invalid references are reported by validation
+              }
+            });
+
+    var keyrefs =
+        doc.select(descendant(isElement()).then(attribute(hasLocalName(KEYREF_ATTRS))))
+            .map(attr -> attr.getStringValue().trim())
+            .map(value -> value.indexOf('/') != -1 ? value.substring(0, value.indexOf('/')) : value)
+            .filter(key -> !key.isEmpty())
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    return new Entry(
+        rootId,
+        Collections.unmodifiableMap(titles),
+        readIds(doc),
+        Collections.unmodifiableSet(keys),
+        Collections.unmodifiableSet(references),
+        Collections.unmodifiableSet(keyrefs));
+  }
+
+  /** Read element IDs by topic ID. Topics without an ID are ignored. */
+  static Map<String, List<String>> readIds(XdmNode doc) {
+    var res = new HashMap<String, List<String>>();
+    doc.select(descendant(TOPIC_TOPIC))
+        .forEach(
+            topic -> {
+              var topicId = topic.attribute(ATTR_ID);
+              if (topicId == null) {
+                return;
+              }
+              var elementIds = res.computeIfAbsent(topicId, id -> new ArrayList<>());
+              topic
+                  .select(
+                      Steps.child(isElement())
+                          .where(not(TOPIC_TOPIC))
+                          .then(Steps.descendantOrSelf().then(attribute(ATTR_ID))))
+                  .forEach(elementId -> elementIds.add(elementId.getStringValue()));
+            });
+    return res;
+  }
+}
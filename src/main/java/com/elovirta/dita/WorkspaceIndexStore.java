@@ -0,0 +1,212 @@
+package com.elovirta.dita;
+
+import com.elovirta.dita.WorkspaceIndex.Entry;
+import java.io.*;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk store of workspace index entries.
+ *
+ * <p>Entries are keyed by file URI and stamped with file modification time, size and content hash,
+ * so that unchanged files do not have to be reparsed on startup. The store is read through a
+ * memory-mapped buffer.
+ */
+final class WorkspaceIndexStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(WorkspaceIndexStore.class);
+
+  private static final int MAGIC = 0x444c5349;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HASH_LENGTH = 16;
+
+  private WorkspaceIndexStore() {}
+
+  /**
+   * Stored index entry.
+   *
+   * @param lastModified file modification time in milliseconds
+   * @param size file size in bytes
+   * @param hash content hash
+   * @param entry index entry
+   */
+  record Stored(long lastModified, long size, byte[] hash, Entry entry) {
+    boolean matches(long lastModified, long size) {
+      return this.lastModified == lastModified && this.size == size;
+    }
+
+    boolean matches(byte[] hash) {
+      return Arrays.equals(this.hash, hash);
+    }
+  }
+
+  /** Content hash of file contents. */
+  static byte[] hash(byte[] content) {
+    try {
+      return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(content), HASH_LENGTH);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Read stored entries.
+   *
+   * @param file store file
+   * @return stored entries by file URI, empty if store is missing or unreadable
+   */
+  static Map<URI, Stored> read(Path file) {
+    if (!Files.exists(file)) {
+      return Collections.emptyMap();
+    }
+    try (var channel = FileChannel.open(file)) {
+      var in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+        logger.info("Ignore stale workspace index {}", file);
+        return Collections.emptyMap();
+      }
+      var count = in.getInt();
+      var res = new HashMap<URI, Stored>(count * 2);
+      for (int i = 0; i < count; i++) {
+        var uri = URI.create(readString(in));
+        var lastModified = in.getLong();
+        var size = in.getLong();
+        var hash = new byte[HASH_LENGTH];
+        in.get(hash);
+        res.put(uri, new Stored(lastModified, size, hash, readEntry(in)));
+      }
+      return res;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Failed to read workspace index {}: {}", file, e.getMessage());
+      return Collections.emptyMap();
+    }
+  }
+
+  private static Entry readEntry(ByteBuffer in) {
+    var rootId = readString(in);
+    var titles = new LinkedHashMap<String, String>();
+    for (int i = in.getInt(); i > 0; i--) {
+      titles.put(readString(in), readString(in));
+    }
+    var ids = new HashMap<String, List<String>>();
+    for (int i = in.getInt(); i > 0; i--) {
+      var topicId = readString(in);
+      var elementIds = new ArrayList<String>();
+      for (int j = in.getInt(); j > 0; j--) {
+        elementIds.add(readString(in));
+      }
+      ids.put(topicId, elementIds);
+    }
+    var keys = readStrings(in);
+    var references = new LinkedHashSet<URI>();
+    for (String reference : readStrings(in)) {
+      references.add(URI.create(reference));
+    }
+    var keyrefs = readStrings(in);
+    return new Entry(
+        rootId,
+        Collections.unmodifiableMap(titles),
+        ids,
+        Collections.unmodifiableSet(keys),
+        Collections.unmodifiableSet(references),
+        Collections.unmodifiableSet(keyrefs));
+  }
+
+  private static Set<String> readStrings(ByteBuffer in) {
+    var res = new LinkedHashSet<String>();
+    for (int i = in.getInt(); i > 0; i--) {
+      res.add(readString(in));
+    }
+    return res;
+  }
+
+  private static String readString(ByteBuffer in) {
+    var length = in.getInt();
+    if (length == -1) {
+      return null;
+    }
+    var buf = new byte[length];
+    in.get(buf);
+    return new String(buf, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Write entries to store file. Failure to write is logged and ignored.
+   *
+   * @param file store file
+   * @param entries stored entries by file URI
+   */
+  static void write(Path file, Map<URI, Stored> entries) {
+    try {
+      Files.createDirectories(file.getParent());
+      var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<URI, Stored> e : entries.entrySet()) {
+          var stored = e.getValue();
+          writeString(out, e.getKey().toString());
+          out.writeLong(stored.lastModified());
+          out.writeLong(stored.size());
+          out.write(stored.hash(), 0, HASH_LENGTH);
+          writeEntry(out, stored.entry());
+        }
+      }
+      try {
+        Files.move(
+            tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      logger.info("Wrote workspace index {}", file);
+    } catch (IOException e) {
+      logger.warn("Failed to write workspace index {}: {}", file, e.getMessage());
+    }
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    writeString(out, entry.rootId());
+    out.writeInt(entry.titles().size());
+    for (Map.Entry<String, String> title : entry.titles().entrySet()) {
+      writeString(out, title.getKey());
+      writeString(out, title.getValue());
+    }
+    out.writeInt(entry.ids().size());
+    for (Map.Entry<String, List<String>> ids : entry.ids().entrySet()) {
+      writeString(out, ids.getKey());
+      writeStrings(out, ids.getValue());
+    }
+    writeStrings(out, entry.keys());
+    writeStrings(out, entry.references().stream().map(URI::toString).toList());
+    writeStrings(out, entry.keyrefs());
+  }
+
+  private static void writeStrings(DataOutputStream out, Collection<String> values)
+      throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    var buf = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(buf.length);
+    out.write(buf);
+  }
+}
@@ -20,22 +20,28 @@ public class Preview {
 
   private final Processor processor;
   private final KeyManager keyManager;
-  private final XsltExecutable previewCompiler;
+  private XsltExecutable previewCompiler;
 
+  /** Create preview generator. Preview stylesheet is compiled on first use. */
   public Preview(Processor processor, KeyManager keyManager) {
     this.processor = processor;
     this.keyManager = keyManager;
-    try (var in = getClass().getResourceAsStream("/xslt/preview.xsl")) {
-      XsltCompiler xsltCompiler = processor.newXsltCompiler();
-      this.previewCompiler =
-          xsltCompiler.compile(new StreamSource(in, "classpath:/xslt/preview.xsl"));
-    } catch (SaxonApiException | IOException e) {
-      throw new RuntimeException("Failed to parse classpath:/xslt/preview.xsl", e);
+  }
+
+  private synchronized XsltExecutable getPreviewCompiler() {
+    if (previewCompiler == null) {
+      try (var in = getClass().getResourceAsStream("/xslt/preview.xsl")) {
+        XsltCompiler xsltCompiler = processor.newXsltCompiler();
+        previewCompiler = xsltCompiler.compile(new StreamSource(in, "classpath:/xslt/preview.xsl"));
+      } catch (SaxonApiException | IOException e) {
+        throw new RuntimeException("Failed to parse classpath:/xslt/preview.xsl", e);
+      }
     }
+    return previewCompiler;
   }
 
   public String generatePreview(XdmNode doc) {
-    var previewTransformer = previewCompiler.load30();
+    var previewTransformer = getPreviewCompiler().load30();
 
     Set<Map.Entry<String, KeyManager.KeyDefinition>> keys = keyManager.keys();
     //    logger.info("Generating preview for {} keys", keys.size());
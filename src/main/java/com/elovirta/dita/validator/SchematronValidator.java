@@ -1,18 +1,16 @@
 package com.elovirta.dita.validator;
 
 import static com.elovirta.dita.DitaTextDocumentService.SOURCE;
-import static com.elovirta.dita.xml.XmlSerializer.LOC_ATTR_PREFIX;
-import static com.elovirta.dita.xml.XmlSerializer.LOC_NAMESPACE;
 import static net.sf.saxon.s9api.streams.Steps.*;
 
-import com.elovirta.dita.Utils;
+import com.elovirta.dita.xml.LocationTable;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import net.sf.saxon.s9api.*;
@@ -39,46 +37,80 @@ public class SchematronValidator {
 
   private static final Logger logger = LoggerFactory.getLogger(SchematronValidator.class);
 
+  private static final Set<String> BUILT_IN_VERSIONS = Set.of("1.0", "1.1", "1.2", "1.3");
+
   private final Processor processor;
-  private final XsltExecutable schematronCompiler;
-  private final Map<String, XsltExecutable> builtInSchematrons;
+  private final Map<String, XsltExecutable> builtInSchematrons = new ConcurrentHashMap<>();
+  private XsltExecutable schematronCompiler;
+  private XdmNode builtInSchematron;
 
+  /**
+   * Create Schematron validator. Schematron transpiler and built-in Schematrons are compiled on
+   * first use.
+   */
   public SchematronValidator(Processor processor) {
     this.processor = processor;
+  }
+
+  private synchronized XsltExecutable getSchematronCompiler() {
+    if (schematronCompiler == null) {
+      try (var in = getClass().getResourceAsStream("/xslt/transpile.xsl")) {
+        schematronCompiler =
+            processor
+                .newXsltCompiler()
+                .compile(new StreamSource(in, "classpath:/xslt/transpile.xsl"));
+      } catch (SaxonApiException | IOException e) {
+        throw new RuntimeException("Failed to parse classpath:/xslt/transpile.xsl", e);
+      }
+    }
+    return schematronCompiler;
+  }
 
-    try (var in = getClass().getResourceAsStream("/xslt/transpile.xsl")) {
-      this.schematronCompiler =
-          processor
-              .newXsltCompiler()
-              .compile(new StreamSource(in, "classpath:/xslt/transpile.xsl"));
-    } catch (SaxonApiException | IOException e) {
-      throw new RuntimeException("Failed to parse classpath:/xslt/transpile.xsl", e);
+  private synchronized XdmNode getBuiltInSchematron() {
+    if (builtInSchematron == null) {
+      try (var in = getClass().getResourceAsStream("/schemas/sch/dita.sch")) {
+        builtInSchematron = processor.newDocumentBuilder().build(new StreamSource(in));
+      } catch (IOException | SaxonApiException e) {
+        throw new RuntimeException("Failed to read schematron", e);
+      }
     }
+    return builtInSchematron;
+  }
 
-    try (var in = getClass().getResourceAsStream("/schemas/sch/dita.sch")) {
-      var src = processor.newDocumentBuilder().build(new StreamSource(in)).getUnderlyingNode();
-      builtInSchematrons =
-          Stream.of("1.0", "1.1", "1.2", "1.3")
-              .collect(
-                  Collectors.toMap(
-                      version -> version,
-                      version -> {
-                        try {
-                          var dst = new XdmDestination();
-                          var compiler = schematronCompiler.load30();
-                          compiler.setStylesheetParameters(
-                              Map.of(SCHXSLT_PHASE, XdmValue.makeValue("all" + "_" + version)));
-                          compiler.transform(src, dst);
-                          return processor
-                              .newXsltCompiler()
-                              .compile(dst.getXdmNode().getUnderlyingNode());
-                        } catch (SaxonApiException e) {
-                          throw new RuntimeException("Failed to compile schematron", e);
-                        }
-                      }));
-    } catch (IOException | SaxonApiException e) {
-      throw new RuntimeException("Failed to read schematron", e);
+  /**
+   * Get built-in Schematron for DITA version, compiling it on first use. Built-in Schematrons are
+   * transpiled at build time. If the transpiled stylesheet is missing, transpile at runtime.
+   */
+  private XsltExecutable getBuiltInSchematron(String version) {
+    if (!BUILT_IN_VERSIONS.contains(version)) {
+      return null;
     }
+    return builtInSchematrons.computeIfAbsent(
+        version,
+        v -> {
+          logger.info("Compiling built-in schematron for DITA {}", v);
+          var systemId = "/schemas/sch/dita-" + v + ".xsl";
+          try (var in = getClass().getResourceAsStream(systemId)) {
+            if (in != null) {
+              return processor
+                  .newXsltCompiler()
+                  .compile(new StreamSource(in, "classpath:" + systemId));
+            }
+          } catch (SaxonApiException | IOException e) {
+            throw new RuntimeException("Failed to parse classpath:" + systemId, e);
+          }
+          logger.info("Transpiled schematron {} not found, transpiling", systemId);
+          try {
+            var dst = new XdmDestination();
+            var compiler = getSchematronCompiler().load30();
+            compiler.setStylesheetParameters(
+                Map.of(SCHXSLT_PHASE, XdmValue.makeValue("all" + "_" + v)));
+            compiler.transform(getBuiltInSchematron().getUnderlyingNode(), dst);
+            return processor.newXsltCompiler().compile(dst.getXdmNode().getUnderlyingNode());
+          } catch (SaxonApiException e) {
+            throw new RuntimeException("Failed to compile schematron", e);
+          }
+        });
   }
 
   private XsltExecutable readSchematron(URI srcUri, String version) {
@@ -92,7 +124,7 @@ public class SchematronValidator {
         src = new StreamSource(srcUri.toString());
       }
       var dst = new XdmDestination();
-      var compiler = schematronCompiler.load30();
+      var compiler = getSchematronCompiler().load30();
       compiler.setStylesheetParameters(Map.of(SCHXSLT_PHASE, XdmValue.makeValue("all_" + version)));
       compiler.transform(src, dst);
       return processor.newXsltCompiler().compile(dst.getXdmNode().getUnderlyingNode());
@@ -104,7 +136,7 @@ public class SchematronValidator {
   public void validate(XdmNode content, List<Diagnostic> diagnostics) {
     var version = getDitaArchVersion(content);
     logger.debug("Validating with schematron");
-    var schematron = builtInSchematrons.get(version);
+    var schematron = getBuiltInSchematron(version);
     if (schematron == null) {
       return;
     }
@@ -157,20 +189,11 @@ public class SchematronValidator {
 
   private Range getRange(XdmNode context) {
     // FIXME: Track text node locations with PIs
-    var element =
-        switch (context.getNodeKind()) {
-          case TEXT, ATTRIBUTE -> context.getParent();
-          default -> context;
-        };
-    var attribute =
-        switch (context.getNodeKind()) {
-          case ATTRIBUTE ->
-              new QName(
-                  LOC_NAMESPACE + context.getNodeName().getNamespaceUri(),
-                  LOC_ATTR_PREFIX + context.getNodeName().getLocalName());
-          default -> new QName(LOC_NAMESPACE, "elem");
-        };
-    return Utils.parseRange(element.getAttributeValue(attribute));
+    return switch (context.getNodeKind()) {
+      case TEXT -> LocationTable.getElementRange(context.getParent());
+      case ATTRIBUTE -> LocationTable.getAttributeRange(context);
+      default -> LocationTable.getElementRange(context);
+    };
   }
 
   private static @NotNull String getDitaArchVersion(XdmNode content) {
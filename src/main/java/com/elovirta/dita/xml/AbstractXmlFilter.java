@@ -17,18 +17,24 @@ public abstract class AbstractXmlFilter implements XmlLexer {
 
   private final Deque<XmlLexer.TokenType> typeBuffer = new ArrayDeque<>();
   private final Deque<char[]> textBuffer = new ArrayDeque<>();
+  private final Deque<Integer> textStartBuffer = new ArrayDeque<>();
+  private final Deque<Integer> textLengthBuffer = new ArrayDeque<>();
   private final Deque<Integer> lineBuffer = new ArrayDeque<>();
   private final Deque<Integer> columnBuffer = new ArrayDeque<>();
   private final Deque<Integer> offsetBuffer = new ArrayDeque<>();
 
   private XmlLexer.TokenType currentType;
   private char[] currentText;
+  private int currentTextStart;
+  private int currentTextLength;
   private int currentLine;
   private int currentColumn;
   private int currentOffset;
 
   private XmlLexer.TokenType peekType;
   private char[] peekText;
+  private int peekTextStart;
+  private int peekTextLength;
   private int peekLine;
   private int peekColumn;
   private int peekOffset;
@@ -60,6 +66,8 @@ public abstract class AbstractXmlFilter implements XmlLexer {
       setCurrentToken(
           typeBuffer.removeFirst(),
           textBuffer.removeFirst(),
+          textStartBuffer.removeFirst(),
+          textLengthBuffer.removeFirst(),
           lineBuffer.removeFirst(),
           columnBuffer.removeFirst(),
           offsetBuffer.removeFirst());
@@ -67,7 +75,12 @@ public abstract class AbstractXmlFilter implements XmlLexer {
         case ELEMENT_NAME_START ->
             elementStack.push(
                 new StackEntry(
-                    currentText, currentLine, currentColumn, currentColumn + currentText.length));
+                    currentText,
+                    currentTextStart,
+                    currentTextLength,
+                    currentLine,
+                    currentColumn,
+                    currentColumn + currentTextLength));
           //        case ELEMENT_NAME_END, EMPTY_ELEMENT_END -> elementStack.pop();
       }
 
@@ -84,7 +97,9 @@ public abstract class AbstractXmlFilter implements XmlLexer {
     parent.next();
     setCurrentToken(
         parent.getType(),
-        parent.getText(),
+        parent.getTextBuffer(),
+        parent.getTextStart(),
+        parent.getTextLength(),
         parent.getLine(),
         parent.getColumn(),
         parent.getOffset());
@@ -92,7 +107,12 @@ public abstract class AbstractXmlFilter implements XmlLexer {
       case ELEMENT_NAME_START ->
           elementStack.push(
               new StackEntry(
-                  currentText, currentLine, currentColumn, currentColumn + currentText.length));
+                  currentText,
+                  currentTextStart,
+                  currentTextLength,
+                  currentLine,
+                  currentColumn,
+                  currentColumn + currentTextLength));
         // case ELEMENT_NAME_END, EMPTY_ELEMENT_END -> elementStack.pop();
     }
 
@@ -112,12 +132,24 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   }
 
   @Override
-  public char[] getText() {
+  public char[] getTextBuffer() {
     return currentText;
   }
 
-  void setText(char[] text) {
+  @Override
+  public int getTextStart() {
+    return currentTextStart;
+  }
+
+  @Override
+  public int getTextLength() {
+    return currentTextLength;
+  }
+
+  void setText(char[] text, int start, int length) {
     currentText = text;
+    currentTextStart = start;
+    currentTextLength = length;
   }
 
   @Override
@@ -153,14 +185,6 @@ public abstract class AbstractXmlFilter implements XmlLexer {
     diagnostics.add(diagnostic);
   }
 
-  char[] getPeekText() {
-    return peekText;
-  }
-
-  void setPeekText(char[] peekText) {
-    this.peekText = peekText;
-  }
-
   int getPeekLine() {
     return peekLine;
   }
@@ -174,9 +198,17 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   }
 
   private void setCurrentToken(
-      XmlLexer.TokenType type, char[] text, int line, int column, int offset) {
+      XmlLexer.TokenType type,
+      char[] text,
+      int textStart,
+      int textLength,
+      int line,
+      int column,
+      int offset) {
     currentType = type;
     currentText = text;
+    currentTextStart = textStart;
+    currentTextLength = textLength;
     currentLine = line;
     currentColumn = column;
     currentOffset = offset;
@@ -187,6 +219,8 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   void pushToBuffer(XmlLexer.TokenType type, char[] text, int line, int column, int offset) {
     typeBuffer.addLast(type);
     textBuffer.addLast(text);
+    textStartBuffer.addLast(0);
+    textLengthBuffer.addLast(text.length);
     lineBuffer.addLast(line);
     columnBuffer.addLast(column);
     offsetBuffer.addLast(offset);
@@ -195,6 +229,8 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   void pushPeekToBuffer() {
     typeBuffer.addLast(peekType);
     textBuffer.addLast(peekText);
+    textStartBuffer.addLast(peekTextStart);
+    textLengthBuffer.addLast(peekTextLength);
     lineBuffer.addLast(peekLine);
     columnBuffer.addLast(peekColumn);
     offsetBuffer.addLast(peekOffset);
@@ -209,6 +245,8 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   void pushPeekToBufferAs(TokenType type) {
     typeBuffer.addLast(type);
     textBuffer.addLast(peekText);
+    textStartBuffer.addLast(peekTextStart);
+    textLengthBuffer.addLast(peekTextLength);
     lineBuffer.addLast(peekLine);
     columnBuffer.addLast(peekColumn);
     offsetBuffer.addLast(peekOffset);
@@ -218,6 +256,8 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   void clearPeek() {
     peekType = null;
     peekText = null;
+    peekTextStart = -1;
+    peekTextLength = -1;
     peekLine = -1;
     peekColumn = -1;
     peekOffset = -1;
@@ -227,6 +267,8 @@ public abstract class AbstractXmlFilter implements XmlLexer {
     if (!typeBuffer.isEmpty()) {
       peekType = typeBuffer.pop();
       peekText = textBuffer.removeFirst();
+      peekTextStart = textStartBuffer.removeFirst();
+      peekTextLength = textLengthBuffer.removeFirst();
       peekLine = lineBuffer.removeFirst();
       peekColumn = columnBuffer.removeFirst();
       peekOffset = offsetBuffer.removeFirst();
@@ -234,7 +276,9 @@ public abstract class AbstractXmlFilter implements XmlLexer {
     }
     parent.next();
     peekType = parent.getType();
-    peekText = parent.getText();
+    peekText = parent.getTextBuffer();
+    peekTextStart = parent.getTextStart();
+    peekTextLength = parent.getTextLength();
     peekLine = parent.getLine();
     peekColumn = parent.getColumn();
     peekOffset = parent.getOffset();
@@ -244,11 +288,21 @@ public abstract class AbstractXmlFilter implements XmlLexer {
   XmlLexer.TokenType popLast() {
     var type = typeBuffer.pop();
     textBuffer.removeFirst();
+    textStartBuffer.removeFirst();
+    textLengthBuffer.removeFirst();
     lineBuffer.removeFirst();
     columnBuffer.removeFirst();
     offsetBuffer.removeFirst();
     return type;
   }
 
-  record StackEntry(char[] name, int row, int startColumn, int endColumn) {}
+  /**
+   * Open element.
+   *
+   * @param name buffer that contains element name
+   * @param nameStart start index of element name in buffer
+   * @param nameLength length of element name
+   */
+  record StackEntry(
+      char[] name, int nameStart, int nameLength, int row, int startColumn, int endColumn) {}
 }
@@ -1,18 +1,34 @@
 package com.elovirta.dita.xml;
 
+import com.elovirta.dita.Utils;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLAttributeDecl;
 import org.apache.xerces.impl.dtd.XMLDTDDescription;
+import org.apache.xerces.impl.dtd.XMLDTDLoader;
+import org.apache.xerces.impl.dtd.XMLElementDecl;
 import org.apache.xerces.parsers.SAXParser;
 import org.apache.xerces.parsers.XMLGrammarPreparser;
-import org.apache.xerces.util.XMLGrammarPoolImpl;
 import org.apache.xerces.xni.XNIException;
 import org.apache.xerces.xni.grammars.Grammar;
 import org.apache.xerces.xni.grammars.XMLGrammarDescription;
@@ -24,7 +40,8 @@ import org.xmlresolver.Resolver;
 
 /**
  * Manages cached DTD grammars for SAX parsing. Grammars are cached by public identifier and lazily
- * loaded on first use.
+ * loaded on first use. All pooled parsers share a single grammar pool, so a grammar loaded by one
+ * parser is available to all parsers.
  */
 public class DITAGrammarCacheManager {
 
@@ -40,22 +57,73 @@ public class DITAGrammarCacheManager {
           new XMLDTDDescription(
               "-//OASIS//DTD DITA Subject Scheme Map//EN", null, null, null, "subjectScheme"));
 
-  private final ConcurrentHashMap<String, Grammar> grammarsByPublicId;
-  private final XMLGrammarPoolImpl sharedPool;
-  private final ReadWriteLock poolLock;
+  private static final String SNAPSHOT_PREFIX = "dtd-grammars-";
+  private static final String SNAPSHOT_SUFFIX = ".bin";
+  private static final long GRAMMAR_LOAD_TIMEOUT_MS = 10_000;
+
+  private static final String CLASS_ATTR = "class";
+
+  private final SharedGrammarPool sharedPool;
+  private final Map<String, Map<String, String>> classDefaults = new ConcurrentHashMap<>();
   private final Resolver catalogResolver;
 
-  private final BlockingQueue<SAXParser> pool;
-  private final int capacity;
+  private final ConcurrentLinkedDeque<SAXParser> pool = new ConcurrentLinkedDeque<>();
+  private final Permits permits;
+  private volatile int capacity;
   private final long acquireTimeoutMs;
   private final AtomicInteger created = new AtomicInteger(0);
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder waited = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
 
   public DITAGrammarCacheManager(Resolver catalogResolver) {
+    this(catalogResolver, Utils.getCacheDirectory());
+  }
+
+  /**
+   * Create grammar cache manager.
+   *
+   * @param catalogResolver catalog resolver for DTDs
+   * @param cacheDirectory directory for preparsed grammar snapshot, {@code null} to always preparse
+   */
+  public DITAGrammarCacheManager(Resolver catalogResolver, Path cacheDirectory) {
     this.catalogResolver = catalogResolver;
-    this.grammarsByPublicId = new ConcurrentHashMap<>();
-    this.sharedPool = new XMLGrammarPoolImpl();
-    this.poolLock = new ReentrantReadWriteLock();
+    this.sharedPool = new SharedGrammarPool(GRAMMAR_LOAD_TIMEOUT_MS);
 
+    List<InputSource> inputs = new ArrayList<>();
+    for (XMLDTDDescription resource : DESCRIPTIONS) {
+      try {
+        inputs.add(
+            catalogResolver.resolveEntity(resource.getPublicId(), resource.getExpandedSystemId()));
+      } catch (IOException | SAXException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    var snapshotKey = getSnapshotKey(inputs);
+    var snapshotFile =
+        cacheDirectory != null
+            ? cacheDirectory.resolve(SNAPSHOT_PREFIX + hash(snapshotKey) + SNAPSHOT_SUFFIX)
+            : null;
+    var grammars = snapshotFile != null ? DtdGrammarSnapshot.read(snapshotFile, snapshotKey) : null;
+    if (grammars != null) {
+      logger.info("Read DTD grammars from snapshot {}", snapshotFile);
+      sharedPool.cacheGrammars(XMLGrammarDescription.XML_DTD, grammars);
+      for (InputSource input : inputs) {
+        close(input);
+      }
+    } else {
+      preparseGrammars(inputs, snapshotFile, snapshotKey);
+    }
+
+    this.capacity = getDefaultCapacity();
+    this.acquireTimeoutMs = 2000;
+    this.permits = new Permits(capacity);
+  }
+
+  private void preparseGrammars(List<InputSource> inputs, Path snapshotFile, String snapshotKey) {
     XMLGrammarPreparser preparser = new XMLGrammarPreparser();
     preparser.registerPreparser(XMLGrammarDescription.XML_DTD, null);
     preparser.setGrammarPool(sharedPool);
@@ -75,11 +143,17 @@ public class DITAGrammarCacheManager {
             throw new XNIException(e);
           }
         });
+    DtdGrammarSnapshot.Recorder recorder = null;
+    if (snapshotFile != null) {
+      recorder = new DtdGrammarSnapshot.Recorder();
+      var loader = (XMLDTDLoader) preparser.getLoader(XMLGrammarDescription.XML_DTD);
+      loader.setDTDHandler(recorder);
+      loader.setDTDContentModelHandler(recorder);
+    }
 
-    for (XMLDTDDescription resource : DESCRIPTIONS) {
+    List<byte[]> recordings = new ArrayList<>();
+    for (InputSource input : inputs) {
       try {
-        var input =
-            catalogResolver.resolveEntity(resource.getPublicId(), resource.getExpandedSystemId());
         XMLInputSource inputSource =
             new XMLInputSource(
                 input.getPublicId(),
@@ -87,17 +161,199 @@ public class DITAGrammarCacheManager {
                 input.getSystemId(),
                 input.getByteStream(),
                 input.getEncoding());
-        preparser.preparseGrammar(XMLGrammarDescription.XML_DTD, inputSource);
-      } catch (IOException | SAXException e) {
+        var grammar = preparser.preparseGrammar(XMLGrammarDescription.XML_DTD, inputSource);
+        if (recorder != null) {
+          recordings.add(recorder.finish(grammar));
+        }
+      } catch (IOException e) {
         throw new RuntimeException(e);
       }
     }
 
-    this.capacity = 10;
-    this.acquireTimeoutMs = 2000;
-    this.pool = new ArrayBlockingQueue<>(capacity);
+    if (snapshotFile != null) {
+      DtdGrammarSnapshot.write(snapshotFile, snapshotKey, recordings);
+      deleteStaleSnapshots(snapshotFile);
+    }
+  }
+
+  /** Snapshot key from application version, catalog, and resolved DTD locations. */
+  private static String getSnapshotKey(List<InputSource> inputs) {
+    var key = new StringBuilder();
+    var properties = new Properties();
+    try (var in = DITAGrammarCacheManager.class.getResourceAsStream("/version.properties")) {
+      if (in != null) {
+        properties.load(in);
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to read version: {}", e.getMessage());
+    }
+    key.append(properties.getProperty("version", "unknown")).append('\n');
+    try (var in = DITAGrammarCacheManager.class.getResourceAsStream("/schemas/catalog.xml")) {
+      if (in != null) {
+        key.append(hash(in.readAllBytes())).append('\n');
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to read catalog: {}", e.getMessage());
+    }
+    for (InputSource input : inputs) {
+      key.append(input.getSystemId()).append(' ').append(getLastModified(input)).append('\n');
+    }
+    return key.toString();
+  }
+
+  private static long getLastModified(InputSource input) {
+    try {
+      return URI.create(input.getSystemId()).toURL().openConnection().getLastModified();
+    } catch (IOException | IllegalArgumentException e) {
+      return 0;
+    }
+  }
+
+  private static void deleteStaleSnapshots(Path snapshotFile) {
+    try (var files = Files.newDirectoryStream(snapshotFile.getParent(), SNAPSHOT_PREFIX + "*")) {
+      for (Path file : files) {
+        if (!file.equals(snapshotFile)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to delete stale DTD grammar snapshots: {}", e.getMessage());
+    }
+  }
+
+  private static String hash(String value) {
+    return hash(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String hash(byte[] value) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256").digest(value);
+      return HexFormat.of().formatHex(digest, 0, 16);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void close(InputSource input) {
+    try (var in = input.getByteStream()) {
+      // Close stream
+    } catch (IOException e) {
+      logger.warn("Failed to close {}: {}", input.getSystemId(), e.getMessage());
+    }
+  }
+
+  /** Get preparsed DTD grammars. */
+  Grammar[] getGrammars() {
+    return sharedPool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD);
+  }
+
+  /**
+   * Get default {@code class} attribute values from a loaded DTD grammar. Grammars are not loaded
+   * by this method.
+   *
+   * @param publicId DTD public identifier
+   * @return default class values by element name, {@code null} if grammar has not been loaded
+   */
+  public Map<String, String> getClassDefaults(String publicId) {
+    var res = classDefaults.get(publicId);
+    if (res != null) {
+      return res;
+    }
+    if (!(sharedPool.getGrammar(publicId) instanceof DTDGrammar grammar)) {
+      return null;
+    }
+    return classDefaults.computeIfAbsent(publicId, key -> readClassDefaults(grammar));
+  }
+
+  private static Map<String, String> readClassDefaults(DTDGrammar grammar) {
+    var res = new HashMap<String, String>();
+    var elementDecl = new XMLElementDecl();
+    var attributeDecl = new XMLAttributeDecl();
+    for (int element = grammar.getFirstElementDeclIndex();
+        element != -1;
+        element = grammar.getNextElementDeclIndex(element)) {
+      if (!grammar.getElementDecl(element, elementDecl)) {
+        continue;
+      }
+      for (int attribute = grammar.getFirstAttributeDeclIndex(element);
+          attribute != -1;
+          attribute = grammar.getNextAttributeDeclIndex(attribute)) {
+        if (grammar.getAttributeDecl(attribute, attributeDecl)
+            && CLASS_ATTR.equals(attributeDecl.name.rawname)
+            && attributeDecl.simpleType.defaultValue != null) {
+          res.put(elementDecl.name.rawname, attributeDecl.simpleType.defaultValue);
+        }
+      }
+    }
+    return Collections.unmodifiableMap(res);
+  }
+
+  /** Default parser pool capacity, one parser per available processor. */
+  static int getDefaultCapacity() {
+    return Math.max(2, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Set parser pool capacity. Shrinking the pool does not interrupt parsers in use, excess parsers
+   * are discarded as they are released.
+   *
+   * @param capacity maximum number of concurrently used parsers
+   */
+  public synchronized void setCapacity(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Parser pool capacity must be positive: " + capacity);
+    }
+    var delta = capacity - this.capacity;
+    if (delta == 0) {
+      return;
+    }
+    logger.info("Resize parser pool from {} to {}", this.capacity, capacity);
+    this.capacity = capacity;
+    if (delta > 0) {
+      permits.release(delta);
+    } else {
+      permits.reduce(-delta);
+      while (pool.size() > capacity && pool.pollLast() != null) {
+        created.decrementAndGet();
+      }
+    }
   }
 
+  /** Get parser pool statistics. */
+  public PoolStats getPoolStats() {
+    return new PoolStats(
+        capacity,
+        created.get(),
+        pool.size(),
+        acquired.sum(),
+        waited.sum(),
+        exhausted.sum(),
+        TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum()),
+        TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+  }
+
+  /**
+   * Parser pool statistics.
+   *
+   * @param capacity maximum number of concurrently used parsers
+   * @param created number of live parsers, in use or idle
+   * @param idle number of idle parsers
+   * @param acquired number of parser acquisitions
+   * @param waited number of acquisitions that had to wait for a parser
+   * @param exhausted number of acquisitions that waited longer than the acquire timeout
+   * @param totalWaitMillis total time spent waiting for a parser
+   * @param maxWaitMillis longest time spent waiting for a parser
+   */
+  public record PoolStats(
+      int capacity,
+      int created,
+      int idle,
+      long acquired,
+      long waited,
+      long exhausted,
+      long totalWaitMillis,
+      long maxWaitMillis) {}
+
   /** Acquire a parser from a parser pool. */
   public <T, E extends Exception> T withParser(CheckedFunction<SAXParser, T, E> task) throws E {
     SAXParser parser = acquire();
@@ -109,16 +365,12 @@ public class DITAGrammarCacheManager {
   }
 
   /**
-   * Create a SAX parser configured to use cached grammars. The parser will automatically cache new
-   * grammars as it encounters them.
+   * Create a SAX parser configured to use cached grammars. The parser will automatically publish
+   * new grammars to the shared pool as it encounters them.
    */
   private SAXParser createParser() throws SAXNotSupportedException, SAXNotRecognizedException {
     SAXParser parser = new SAXParser();
-    var grammarPool = new XMLGrammarPoolImpl();
-    grammarPool.cacheGrammars(
-        XMLGrammarDescription.XML_DTD,
-        sharedPool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD));
-    parser.setProperty("http://apache.org/xml/properties/internal/grammar-pool", grammarPool);
+    parser.setProperty("http://apache.org/xml/properties/internal/grammar-pool", sharedPool);
     parser.setFeature("http://xml.org/sax/features/validation", true);
     parser.setFeature("http://xml.org/sax/features/namespaces", true);
     //      parser.setFeature("http://apache.org/xml/sax/features/external-general-entities",
@@ -136,40 +388,46 @@ public class DITAGrammarCacheManager {
   }
 
   /**
-   * Acquire a parser from the pool. Creates a new one if the pool is not yet at capacity and no
-   * parsers are immediately available. Blocks up to acquireTimeoutMs if the pool is exhausted.
+   * Acquire a parser from the pool. Creates a new one if no idle parsers are available. If the pool
+   * is exhausted, applies back-pressure by blocking until a parser is released. Waits longer than
+   * acquireTimeoutMs are counted as pool exhaustion.
    *
-   * @throws ParserUnavailableException if no parser becomes available within the timeout
+   * @throws ParserUnavailableException if interrupted or a new parser cannot be created
    */
   private SAXParser acquire() {
     logger.debug("Acquire parser ({})", pool.size());
-    SAXParser parser = pool.poll();
-    if (parser != null) {
-      return parser;
-    }
-    if (created.get() < capacity) {
-      int slot = created.getAndIncrement();
-      if (slot < capacity) {
-        try {
-          return createParser();
-        } catch (SAXException e) {
-          created.decrementAndGet();
-          throw new ParserUnavailableException("Failed to create SAXParser", e);
+    if (!permits.tryAcquire()) {
+      var start = System.nanoTime();
+      waited.increment();
+      try {
+        if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+          exhausted.increment();
+          logger.info(
+              "No SAXParser available within {}ms (pool size: {}), waiting",
+              acquireTimeoutMs,
+              capacity);
+          permits.acquire();
         }
-      } else {
-        created.decrementAndGet();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ParserUnavailableException("Interrupted while waiting for a SAXParser", e);
       }
+      var wait = System.nanoTime() - start;
+      totalWaitNanos.add(wait);
+      maxWaitNanos.accumulateAndGet(wait, Math::max);
     }
-    try {
-      parser = pool.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new ParserUnavailableException("Interrupted while waiting for a SAXParser", e);
+    acquired.increment();
+    SAXParser parser = pool.pollFirst();
+    if (parser != null) {
+      return parser;
     }
-    if (parser == null) {
-      throw new ParserUnavailableException(
-          "No SAXParser available within " + acquireTimeoutMs + "ms (pool size: " + capacity + ")");
+    try {
+      parser = createParser();
+    } catch (SAXException e) {
+      permits.release();
+      throw new ParserUnavailableException("Failed to create SAXParser", e);
     }
+    created.incrementAndGet();
     return parser;
   }
 
@@ -182,11 +440,26 @@ public class DITAGrammarCacheManager {
     if (parser == null) {
       return;
     }
+    // Grammars the parser failed to load must not block other parsers
+    sharedPool.releaseClaims();
     parser.reset();
-    // TODO: Check if this parser parsed any new grammars and add them to shared pool
-    boolean returned = pool.offer(parser);
-    if (!returned) {
-      logger.info("Pool is full, discard parser");
+    if (pool.size() < capacity) {
+      pool.offerFirst(parser);
+    } else {
+      created.decrementAndGet();
+      logger.debug("Pool is full, discard parser");
+    }
+    permits.release();
+  }
+
+  /** Semaphore that can be shrunk when pool capacity is reduced. */
+  private static final class Permits extends Semaphore {
+    Permits(int permits) {
+      super(permits, true);
+    }
+
+    void reduce(int reduction) {
+      reducePermits(reduction);
     }
   }
 
@@ -0,0 +1,559 @@
+package com.elovirta.dita.xml;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLDTDDescription;
+import org.apache.xerces.util.SymbolTable;
+import org.apache.xerces.util.XMLResourceIdentifierImpl;
+import org.apache.xerces.xni.*;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.parser.XMLDTDContentModelSource;
+import org.apache.xerces.xni.parser.XMLDTDSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk snapshot of preparsed DTD grammars.
+ *
+ * <p>Xerces grammars are not serializable. Instead, the DTD declaration events that build a grammar
+ * are recorded while the DTD is preparsed, and replayed into a new {@link DTDGrammar} when the
+ * snapshot is loaded. Replay skips entity resolution and DTD scanning.
+ */
+final class DtdGrammarSnapshot {
+
+  private static final Logger logger = LoggerFactory.getLogger(DtdGrammarSnapshot.class);
+
+  private static final int MAGIC = 0x44544447;
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int START_DTD = 1;
+  private static final int END_DTD = 2;
+  private static final int START_PARAMETER_ENTITY = 3;
+  private static final int END_PARAMETER_ENTITY = 4;
+  private static final int START_EXTERNAL_SUBSET = 5;
+  private static final int END_EXTERNAL_SUBSET = 6;
+  private static final int ELEMENT_DECL = 7;
+  private static final int START_ATTLIST = 8;
+  private static final int ATTRIBUTE_DECL = 9;
+  private static final int END_ATTLIST = 10;
+  private static final int INTERNAL_ENTITY_DECL = 11;
+  private static final int EXTERNAL_ENTITY_DECL = 12;
+  private static final int UNPARSED_ENTITY_DECL = 13;
+  private static final int NOTATION_DECL = 14;
+  private static final int START_CONTENT_MODEL = 15;
+  private static final int ANY = 16;
+  private static final int EMPTY = 17;
+  private static final int START_GROUP = 18;
+  private static final int PCDATA = 19;
+  private static final int ELEMENT = 20;
+  private static final int SEPARATOR = 21;
+  private static final int OCCURRENCE = 22;
+  private static final int END_GROUP = 23;
+  private static final int END_CONTENT_MODEL = 24;
+
+  private static final int NULL = -1;
+  private static final int NEW = -2;
+
+  private DtdGrammarSnapshot() {}
+
+  /**
+   * Read grammars from snapshot file.
+   *
+   * @param file snapshot file
+   * @param key cache key the snapshot must have been written with
+   * @return grammars, or {@code null} if snapshot is missing, stale, or unreadable
+   */
+  static Grammar[] read(Path file, String key) {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key)) {
+        logger.info("Ignore stale DTD grammar snapshot {}", file);
+        return null;
+      }
+      var symbolTable = new SymbolTable();
+      var grammars = new Grammar[in.readInt()];
+      for (int i = 0; i < grammars.length; i++) {
+        grammars[i] = readGrammar(in, symbolTable);
+      }
+      return grammars;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Failed to read DTD grammar snapshot {}: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Write recorded grammars to snapshot file. Failure to write is logged and ignored.
+   *
+   * @param file snapshot file
+   * @param key cache key
+   * @param recordings recorded grammars
+   */
+  static void write(Path file, String key, List<byte[]> recordings) {
+    try {
+      Files.createDirectories(file.getParent());
+      var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeInt(recordings.size());
+        for (byte[] recording : recordings) {
+          out.write(recording);
+        }
+      }
+      try {
+        Files.move(
+            tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      logger.info("Wrote DTD grammar snapshot {}", file);
+    } catch (IOException e) {
+      logger.warn("Failed to write DTD grammar snapshot {}: {}", file, e.getMessage());
+    }
+  }
+
+  /** DTD handler that records declaration events of a single grammar. */
+  static final class Recorder implements XMLDTDHandler, XMLDTDContentModelHandler {
+
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(buf);
+    private final Map<String, Integer> strings = new HashMap<>();
+    private XMLDTDSource dtdSource;
+    private XMLDTDContentModelSource dtdContentModelSource;
+
+    /** Start recording a new grammar. */
+    void start() {
+      buf.reset();
+      strings.clear();
+    }
+
+    /**
+     * Finish recording.
+     *
+     * @param grammar grammar built from the recorded events
+     * @return recorded events
+     */
+    byte[] finish(Grammar grammar) throws IOException {
+      var desc = (XMLDTDDescription) grammar.getGrammarDescription();
+      var events = buf.toByteArray();
+      var res = new ByteArrayOutputStream(events.length + 256);
+      try (var header = new DataOutputStream(res)) {
+        writeNullableUTF(header, desc.getPublicId());
+        writeNullableUTF(header, desc.getLiteralSystemId());
+        writeNullableUTF(header, desc.getBaseSystemId());
+        writeNullableUTF(header, desc.getExpandedSystemId());
+        header.writeInt(events.length);
+        header.write(events);
+      }
+      start();
+      return res.toByteArray();
+    }
+
+    private void write(int event) {
+      try {
+        out.writeByte(event);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void writeShort(short value) {
+      try {
+        out.writeShort(value);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void writeString(String value) {
+      try {
+        if (value == null) {
+          out.writeInt(NULL);
+          return;
+        }
+        var index = strings.get(value);
+        if (index != null) {
+          out.writeInt(index);
+          return;
+        }
+        strings.put(value, strings.size());
+        out.writeInt(NEW);
+        out.writeInt(value.length());
+        out.writeChars(value);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void writeText(XMLString value) {
+      writeString(value != null ? value.toString() : null);
+    }
+
+    private void writeIdentifier(XMLResourceIdentifier identifier) {
+      try {
+        out.writeBoolean(identifier != null);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (identifier == null) {
+        return;
+      }
+      writeString(identifier.getPublicId());
+      writeString(identifier.getLiteralSystemId());
+      writeString(identifier.getBaseSystemId());
+      writeString(identifier.getExpandedSystemId());
+    }
+
+    @Override
+    public void startDTD(XMLLocator locator, Augmentations augs) {
+      write(START_DTD);
+    }
+
+    @Override
+    public void startParameterEntity(
+        String name, XMLResourceIdentifier identifier, String encoding, Augmentations augs) {
+      write(START_PARAMETER_ENTITY);
+      writeString(name);
+      writeIdentifier(identifier);
+      writeString(encoding);
+    }
+
+    @Override
+    public void textDecl(String version, String encoding, Augmentations augs) {}
+
+    @Override
+    public void endParameterEntity(String name, Augmentations augs) {
+      write(END_PARAMETER_ENTITY);
+      writeString(name);
+    }
+
+    @Override
+    public void startExternalSubset(XMLResourceIdentifier identifier, Augmentations augs) {
+      write(START_EXTERNAL_SUBSET);
+      writeIdentifier(identifier);
+    }
+
+    @Override
+    public void endExternalSubset(Augmentations augs) {
+      write(END_EXTERNAL_SUBSET);
+    }
+
+    @Override
+    public void comment(XMLString text, Augmentations augs) {}
+
+    @Override
+    public void processingInstruction(String target, XMLString data, Augmentations augs) {}
+
+    @Override
+    public void elementDecl(String name, String contentModel, Augmentations augs) {
+      write(ELEMENT_DECL);
+      writeString(name);
+      writeString(contentModel);
+    }
+
+    @Override
+    public void startAttlist(String elementName, Augmentations augs) {
+      write(START_ATTLIST);
+      writeString(elementName);
+    }
+
+    @Override
+    public void attributeDecl(
+        String elementName,
+        String attributeName,
+        String type,
+        String[] enumeration,
+        String defaultType,
+        XMLString defaultValue,
+        XMLString nonNormalizedDefaultValue,
+        Augmentations augs) {
+      write(ATTRIBUTE_DECL);
+      writeString(elementName);
+      writeString(attributeName);
+      writeString(type);
+      if (enumeration == null) {
+        writeShort((short) NULL);
+      } else {
+        writeShort((short) enumeration.length);
+        for (String value : enumeration) {
+          writeString(value);
+        }
+      }
+      writeString(defaultType);
+      writeText(defaultValue);
+      writeText(nonNormalizedDefaultValue);
+    }
+
+    @Override
+    public void endAttlist(Augmentations augs) {
+      write(END_ATTLIST);
+    }
+
+    @Override
+    public void internalEntityDecl(
+        String name, XMLString text, XMLString nonNormalizedText, Augmentations augs) {
+      write(INTERNAL_ENTITY_DECL);
+      writeString(name);
+      writeText(text);
+      writeText(nonNormalizedText);
+    }
+
+    @Override
+    public void externalEntityDecl(
+        String name, XMLResourceIdentifier identifier, Augmentations augs) {
+      write(EXTERNAL_ENTITY_DECL);
+      writeString(name);
+      writeIdentifier(identifier);
+    }
+
+    @Override
+    public void unparsedEntityDecl(
+        String name, XMLResourceIdentifier identifier, String notation, Augmentations augs) {
+      write(UNPARSED_ENTITY_DECL);
+      writeString(name);
+      writeIdentifier(identifier);
+      writeString(notation);
+    }
+
+    @Override
+    public void notationDecl(String name, XMLResourceIdentifier identifier, Augmentations augs) {
+      write(NOTATION_DECL);
+      writeString(name);
+      writeIdentifier(identifier);
+    }
+
+    @Override
+    public void startConditional(short type, Augmentations augs) {}
+
+    @Override
+    public void ignoredCharacters(XMLString text, Augmentations augs) {}
+
+    @Override
+    public void endConditional(Augmentations augs) {}
+
+    @Override
+    public void endDTD(Augmentations augs) {
+      write(END_DTD);
+    }
+
+    @Override
+    public void setDTDSource(XMLDTDSource source) {
+      dtdSource = source;
+    }
+
+    @Override
+    public XMLDTDSource getDTDSource() {
+      return dtdSource;
+    }
+
+    @Override
+    public void startContentModel(String elementName, Augmentations augs) {
+      write(START_CONTENT_MODEL);
+      writeString(elementName);
+    }
+
+    @Override
+    public void any(Augmentations augs) {
+      write(ANY);
+    }
+
+    @Override
+    public void empty(Augmentations augs) {
+      write(EMPTY);
+    }
+
+    @Override
+    public void startGroup(Augmentations augs) {
+      write(START_GROUP);
+    }
+
+    @Override
+    public void pcdata(Augmentations augs) {
+      write(PCDATA);
+    }
+
+    @Override
+    public void element(String elementName, Augmentations augs) {
+      write(ELEMENT);
+      writeString(elementName);
+    }
+
+    @Override
+    public void separator(short separator, Augmentations augs) {
+      write(SEPARATOR);
+      writeShort(separator);
+    }
+
+    @Override
+    public void occurrence(short occurrence, Augmentations augs) {
+      write(OCCURRENCE);
+      writeShort(occurrence);
+    }
+
+    @Override
+    public void endGroup(Augmentations augs) {
+      write(END_GROUP);
+    }
+
+    @Override
+    public void endContentModel(Augmentations augs) {
+      write(END_CONTENT_MODEL);
+    }
+
+    @Override
+    public void setDTDContentModelSource(XMLDTDContentModelSource source) {
+      dtdContentModelSource = source;
+    }
+
+    @Override
+    public XMLDTDContentModelSource getDTDContentModelSource() {
+      return dtdContentModelSource;
+    }
+  }
+
+  private static DTDGrammar readGrammar(DataInputStream in, SymbolTable symbolTable)
+      throws IOException {
+    var desc =
+        new XMLDTDDescription(
+            readNullableUTF(in),
+            readNullableUTF(in),
+            readNullableUTF(in),
+            readNullableUTF(in),
+            null);
+    var grammar = new DTDGrammar(symbolTable, desc);
+    var events = new DataInputStream(new ByteArrayInputStream(in.readNBytes(in.readInt())));
+    var replay = new Replay(events, symbolTable);
+    while (events.available() > 0) {
+      replay.next(grammar);
+    }
+    return grammar;
+  }
+
+  /** Replay recorded events of a single grammar. */
+  private static final class Replay {
+
+    private final DataInputStream in;
+    private final SymbolTable symbolTable;
+    private final List<String> strings = new ArrayList<>();
+
+    Replay(DataInputStream in, SymbolTable symbolTable) {
+      this.in = in;
+      this.symbolTable = symbolTable;
+    }
+
+    private void next(DTDGrammar grammar) throws IOException {
+      var event = in.readByte();
+      switch (event) {
+        case START_DTD -> grammar.startDTD(null, null);
+        case END_DTD -> grammar.endDTD(null);
+        case START_PARAMETER_ENTITY ->
+            grammar.startParameterEntity(readString(), readIdentifier(), readString(), null);
+        case END_PARAMETER_ENTITY -> grammar.endParameterEntity(readString(), null);
+        case START_EXTERNAL_SUBSET -> grammar.startExternalSubset(readIdentifier(), null);
+        case END_EXTERNAL_SUBSET -> grammar.endExternalSubset(null);
+        case ELEMENT_DECL -> grammar.elementDecl(readString(), readString(), null);
+        case START_ATTLIST -> grammar.startAttlist(readString(), null);
+        case ATTRIBUTE_DECL -> {
+          var elementName = readString();
+          var attributeName = readString();
+          var type = readString();
+          var length = in.readShort();
+          String[] enumeration = null;
+          if (length != NULL) {
+            enumeration = new String[length];
+            for (int i = 0; i < length; i++) {
+              enumeration[i] = readString();
+            }
+          }
+          var defaultType = readString();
+          var defaultValue = readText();
+          var nonNormalizedDefaultValue = readText();
+          grammar.attributeDecl(
+              elementName,
+              attributeName,
+              type,
+              enumeration,
+              defaultType,
+              defaultValue,
+              nonNormalizedDefaultValue,
+              null);
+        }
+        case END_ATTLIST -> grammar.endAttlist(null);
+        case INTERNAL_ENTITY_DECL ->
+            grammar.internalEntityDecl(readString(), readText(), readText(), null);
+        case EXTERNAL_ENTITY_DECL ->
+            grammar.externalEntityDecl(readString(), readIdentifier(), null);
+        case UNPARSED_ENTITY_DECL ->
+            grammar.unparsedEntityDecl(readString(), readIdentifier(), readString(), null);
+        case NOTATION_DECL -> grammar.notationDecl(readString(), readIdentifier(), null);
+        case START_CONTENT_MODEL -> grammar.startContentModel(readString(), null);
+        case ANY -> grammar.any(null);
+        case EMPTY -> grammar.empty(null);
+        case START_GROUP -> grammar.startGroup(null);
+        case PCDATA -> grammar.pcdata(null);
+        case ELEMENT -> grammar.element(readString(), null);
+        case SEPARATOR -> grammar.separator(in.readShort(), null);
+        case OCCURRENCE -> grammar.occurrence(in.readShort(), null);
+        case END_GROUP -> grammar.endGroup(null);
+        case END_CONTENT_MODEL -> grammar.endContentModel(null);
+        default -> throw new IOException("Unrecognized DTD event " + event);
+      }
+    }
+
+    /** Read string. Strings are added to the symbol table, Xerces compares names by identity. */
+    private String readString() throws IOException {
+      var index = in.readInt();
+      if (index == NULL) {
+        return null;
+      }
+      if (index == NEW) {
+        var chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++) {
+          chars[i] = in.readChar();
+        }
+        var value = symbolTable.addSymbol(chars, 0, chars.length);
+        strings.add(value);
+        return value;
+      }
+      return strings.get(index);
+    }
+
+    private XMLString readText() throws IOException {
+      var value = readString();
+      if (value == null) {
+        return null;
+      }
+      var chars = value.toCharArray();
+      return new XMLString(chars, 0, chars.length);
+    }
+
+    private XMLResourceIdentifier readIdentifier() throws IOException {
+      if (!in.readBoolean()) {
+        return null;
+      }
+      return new XMLResourceIdentifierImpl(readString(), readString(), readString(), readString());
+    }
+  }
+
+  private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -0,0 +1,231 @@
+package com.elovirta.dita.xml;
+
+import com.elovirta.dita.Utils;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.saxon.s9api.*;
+import net.sf.saxon.tree.tiny.TinyNodeImpl;
+import net.sf.saxon.tree.tiny.TinyTree;
+import net.sf.saxon.type.Type;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+
+/**
+ * Source locations of elements and attributes in a parsed document.
+ *
+ * <p>Locations are recorded by {@link XmlSerializer} in document order and bound to the TinyTree
+ * that is built from the serialized document. Lookups map a TinyTree node number to the element
+ * index in the table.
+ */
+public class LocationTable {
+
+  public static final String NAMESPACE = "loc:";
+  /** Element location attribute used in trees that do not have a location table. */
+  public static final QName ELEMENT_LOCATION = new QName(NAMESPACE, "elem");
+
+  private static final String USER_DATA_KEY = LocationTable.class.getName();
+  /** Element entry: start line, start column, end line, end column, first attribute, count. */
+  private static final int ELEMENT_SIZE = 6;
+
+  private static final int RANGE_SIZE = 4;
+
+  private int[] elements = new int[ELEMENT_SIZE * 64];
+  private int elementCount;
+  private String[] attributeNames = new String[64];
+  private int[] attributes = new int[RANGE_SIZE * 64];
+  private int attributeCount;
+  private Map<String, String> names = new HashMap<>();
+  /** TinyTree node number to element index, -1 for other node kinds. */
+  private int[] nodeElements;
+
+  /** Add element start tag location. Lines and columns are 1-based. */
+  void addElement(int line, int startColumn, int endColumn) {
+    if ((elementCount + 1) * ELEMENT_SIZE > elements.length) {
+      elements = Arrays.copyOf(elements, elements.length * 2);
+    }
+    var i = elementCount * ELEMENT_SIZE;
+    elements[i] = line;
+    elements[i + 1] = startColumn;
+    elements[i + 2] = line;
+    elements[i + 3] = endColumn;
+    elements[i + 4] = attributeCount;
+    elements[i + 5] = 0;
+    elementCount++;
+  }
+
+  /**
+   * Add attribute value location to the last element. Lines and columns are 1-based.
+   *
+   * @param name attribute lexical QName
+   */
+  void addAttribute(String name, int startLine, int startColumn, int endLine, int endColumn) {
+    if (elementCount == 0) {
+      return;
+    }
+    if (attributeCount == attributeNames.length) {
+      attributeNames = Arrays.copyOf(attributeNames, attributeNames.length * 2);
+      attributes = Arrays.copyOf(attributes, attributes.length * 2);
+    }
+    attributeNames[attributeCount] = names.computeIfAbsent(name, n -> n);
+    var i = attributeCount * RANGE_SIZE;
+    attributes[i] = startLine;
+    attributes[i + 1] = startColumn;
+    attributes[i + 2] = endLine;
+    attributes[i + 3] = endColumn;
+    attributeCount++;
+    elements[(elementCount - 1) * ELEMENT_SIZE + 5]++;
+  }
+
+  /**
+   * Bind table to document built from the serialized document. Elements in the document are
+   * matched to recorded start tags in document order.
+   */
+  public void bind(XdmNode document) {
+    if (!(document.getUnderlyingNode().getTreeInfo() instanceof TinyTree tree)) {
+      return;
+    }
+    nodeElements = new int[tree.getNumberOfNodes()];
+    var element = 0;
+    for (int i = 0; i < nodeElements.length; i++) {
+      var kind = tree.getNodeKind(i);
+      if ((kind == Type.ELEMENT || kind == Type.TEXTUAL_ELEMENT) && element < elementCount) {
+        nodeElements[i] = element++;
+      } else {
+        nodeElements[i] = -1;
+      }
+    }
+    names = null;
+    tree.setUserData(USER_DATA_KEY, this);
+  }
+
+  /**
+   * Get element name range in the start tag.
+   *
+   * @return element name range, {@code null} if location is not known
+   */
+  public static Range getElementRange(XdmNode element) {
+    var table = getTable(element);
+    if (table == null) {
+      return Utils.parseRange(element.getAttributeValue(ELEMENT_LOCATION));
+    }
+    var index = table.elementIndex(element);
+    return index != -1 ? toRange(table.elements, index * ELEMENT_SIZE) : null;
+  }
+
+  /**
+   * Get element location in {@code line:column-line:column} format.
+   *
+   * @return element location, {@code null} if location is not known
+   */
+  public static String getElementLocation(XdmNode element) {
+    var table = getTable(element);
+    if (table == null) {
+      return element.getAttributeValue(ELEMENT_LOCATION);
+    }
+    var index = table.elementIndex(element);
+    if (index == -1) {
+      return null;
+    }
+    return format(table.elements, index * ELEMENT_SIZE);
+  }
+
+  /**
+   * Get attribute value range.
+   *
+   * @return attribute value range, {@code null} if location is not known
+   */
+  public static Range getAttributeRange(XdmNode attr) {
+    var element = attr.getParent();
+    var table = getTable(element);
+    if (table == null) {
+      return null;
+    }
+    var index = table.elementIndex(element);
+    if (index == -1) {
+      return null;
+    }
+    var name = attr.getNodeName();
+    var first = table.elements[index * ELEMENT_SIZE + 4];
+    var count = table.elements[index * ELEMENT_SIZE + 5];
+    for (int j = first; j < first + count; j++) {
+      if (matches(table.attributeNames[j], name)) {
+        return toRange(table.attributes, j * RANGE_SIZE);
+      }
+    }
+    return null;
+  }
+
+  private int elementIndex(XdmNode element) {
+    if (element.getUnderlyingNode() instanceof TinyNodeImpl node) {
+      var nodeNumber = node.getNodeNumber();
+      if (nodeNumber < nodeElements.length) {
+        return nodeElements[nodeNumber];
+      }
+    }
+    return -1;
+  }
+
+  private static LocationTable getTable(XdmNode node) {
+    if (node == null) {
+      return null;
+    }
+    var table = node.getUnderlyingNode().getTreeInfo().getUserData(USER_DATA_KEY);
+    return table instanceof LocationTable locations ? locations : null;
+  }
+
+  private static boolean matches(String lexicalName, QName name) {
+    var prefix = name.getPrefix();
+    if (prefix.isEmpty()) {
+      return lexicalName.equals(name.getLocalName());
+    }
+    var localName = name.getLocalName();
+    return lexicalName.length() == prefix.length() + 1 + localName.length()
+        && lexicalName.startsWith(prefix)
+        && lexicalName.charAt(prefix.length()) == ':'
+        && lexicalName.endsWith(localName);
+  }
+
+  private static String format(int[] ranges, int i) {
+    return ranges[i] + ":" + ranges[i + 1] + "-" + ranges[i + 2] + ":" + ranges[i + 3];
+  }
+
+  private static Range toRange(int[] ranges, int i) {
+    if (ranges[i] < 0) {
+      return null;
+    }
+    return new Range(
+        new Position(ranges[i] - 1, ranges[i + 1] - 1),
+        new Position(ranges[i + 2] - 1, ranges[i + 3]));
+  }
+
+  /**
+   * XPath function {@code loc:elem($node as node()) as xs:string?} that returns element location
+   * in {@code line:column-line:column} format. Used to carry locations over to transformation
+   * results.
+   */
+  public static class ElementLocationFunction implements ExtensionFunction {
+    @Override
+    public QName getName() {
+      return ELEMENT_LOCATION;
+    }
+
+    @Override
+    public SequenceType getResultType() {
+      return SequenceType.makeSequenceType(ItemType.STRING, OccurrenceIndicator.ZERO_OR_ONE);
+    }
+
+    @Override
+    public SequenceType[] getArgumentTypes() {
+      return new SequenceType[] {
+        SequenceType.makeSequenceType(ItemType.ANY_NODE, OccurrenceIndicator.ONE)
+      };
+    }
+
+    @Override
+    public XdmValue call(XdmValue[] arguments) {
+      var location = getElementLocation((XdmNode) arguments[0].itemAt(0));
+      return location != null ? new XdmAtomicValue(location) : XdmEmptySequence.getInstance();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package com.elovirta.dita.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DTD grammar pool shared by all pooled parsers.
+ *
+ * <p>Grammars are keyed by public identifier, or by expanded system identifier when there is no
+ * public identifier, because the catalog resolver prefers public identifiers. Lookups are lock
+ * free. A lookup miss claims the grammar for the calling thread, which will load the grammar and
+ * publish it to the pool. Concurrent lookups of the same grammar wait for the publication instead
+ * of loading the grammar again.
+ */
+final class SharedGrammarPool implements XMLGrammarPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(SharedGrammarPool.class);
+
+  private final ConcurrentHashMap<String, Grammar> grammars = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, CountDownLatch> loading = new ConcurrentHashMap<>();
+  private final ThreadLocal<List<String>> claims = ThreadLocal.withInitial(ArrayList::new);
+  private final long loadTimeoutMs;
+  private volatile Grammar[] initialGrammarSet = new Grammar[0];
+
+  SharedGrammarPool(long loadTimeoutMs) {
+    this.loadTimeoutMs = loadTimeoutMs;
+  }
+
+  @Override
+  public Grammar[] retrieveInitialGrammarSet(String grammarType) {
+    if (!XMLGrammarDescription.XML_DTD.equals(grammarType)) {
+      return new Grammar[0];
+    }
+    return initialGrammarSet.clone();
+  }
+
+  @Override
+  public void cacheGrammars(String grammarType, Grammar[] newGrammars) {
+    if (!XMLGrammarDescription.XML_DTD.equals(grammarType)) {
+      return;
+    }
+    for (Grammar grammar : newGrammars) {
+      var key = getKey(grammar.getGrammarDescription());
+      if (key == null) {
+        continue;
+      }
+      if (grammars.putIfAbsent(key, grammar) == null) {
+        synchronized (this) {
+          var set = new ArrayList<>(List.of(initialGrammarSet));
+          set.add(grammar);
+          initialGrammarSet = set.toArray(new Grammar[0]);
+        }
+        logger.debug("Cached grammar {}", key);
+      }
+      release(key);
+    }
+  }
+
+  @Override
+  public Grammar retrieveGrammar(XMLGrammarDescription desc) {
+    var key = getKey(desc);
+    if (key == null) {
+      return null;
+    }
+    var grammar = grammars.get(key);
+    if (grammar != null) {
+      return grammar;
+    }
+    var latch = loading.putIfAbsent(key, new CountDownLatch(1));
+    if (latch == null) {
+      claims.get().add(key);
+      // Grammar may have been published between lookup and claim
+      grammar = grammars.get(key);
+      if (grammar != null) {
+        release(key);
+      }
+      return grammar;
+    }
+    try {
+      if (!latch.await(loadTimeoutMs, TimeUnit.MILLISECONDS)) {
+        logger.info("Timeout waiting for grammar {}", key);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return grammars.get(key);
+  }
+
+  /**
+   * Get published grammar without claiming it.
+   *
+   * @param publicId public identifier
+   * @return grammar, {@code null} if grammar has not been loaded
+   */
+  Grammar getGrammar(String publicId) {
+    return grammars.get("PUBLIC " + publicId);
+  }
+
+  /**
+   * Release grammars claimed by the current thread that were not published. Waiting threads will
+   * load the grammar themselves.
+   */
+  void releaseClaims() {
+    for (String key : List.copyOf(claims.get())) {
+      release(key);
+    }
+  }
+
+  private void release(String key) {
+    var latch = loading.remove(key);
+    if (latch != null) {
+      latch.countDown();
+    }
+    claims.get().remove(key);
+  }
+
+  private static String getKey(XMLGrammarDescription desc) {
+    if (desc.getPublicId() != null) {
+      return "PUBLIC " + desc.getPublicId();
+    } else if (desc.getExpandedSystemId() != null) {
+      return "SYSTEM " + desc.getExpandedSystemId();
+    }
+    return null;
+  }
+
+  @Override
+  public void lockPool() {
+    // Pool is always open for publication
+  }
+
+  @Override
+  public void unlockPool() {
+    // Pool is always open for publication
+  }
+
+  @Override
+  public synchronized void clear() {
+    grammars.clear();
+    initialGrammarSet = new Grammar[0];
+  }
+}
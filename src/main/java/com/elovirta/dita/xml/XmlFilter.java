@@ -2,7 +2,6 @@ package com.elovirta.dita.xml;
 
 import static com.elovirta.dita.xml.XmlLexer.TokenType.ATTR_VALUE;
 
-import com.elovirta.dita.Utils;
 import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,7 +10,11 @@ public class XmlFilter extends AbstractXmlFilter {
 
   private static final Logger logger = LoggerFactory.getLogger(XmlFilter.class);
 
-  public XmlFilter(XmlLexerImpl parent) {
+  private static final char[] QUOTE = {'"'};
+  private static final char[] EQUALS = {'='};
+  private static final char[] GT = {'>'};
+
+  public XmlFilter(XmlLexer parent) {
     super(parent);
   }
 
@@ -26,14 +29,14 @@ public class XmlFilter extends AbstractXmlFilter {
               continue;
             }
             case ATTR_NAME -> {
-              pushToBuffer(TokenType.ATTR_QUOTE, new char[] {'"'}, -1, -1, -1);
+              pushToBuffer(TokenType.ATTR_QUOTE, QUOTE, -1, -1, -1);
               diagnostic("Open quote is expected for attribute", getPeekLine(), getPeekColumn());
               pushPeekToBufferAs(ATTR_VALUE);
               return;
             }
             case ELEMENT_END, EMPTY_ELEMENT_END -> {
-              pushToBuffer(TokenType.ATTR_QUOTE, new char[] {'"'}, -1, -1, -3);
-              pushToBuffer(TokenType.ATTR_QUOTE, new char[] {'"'}, -1, -1, -4);
+              pushToBuffer(TokenType.ATTR_QUOTE, QUOTE, -1, -1, -3);
+              pushToBuffer(TokenType.ATTR_QUOTE, QUOTE, -1, -1, -4);
               pushPeekToBuffer();
               diagnostic("Open quote is expected for attribute", getPeekLine(), getPeekColumn());
               return;
@@ -57,7 +60,7 @@ public class XmlFilter extends AbstractXmlFilter {
               return;
             }
             default -> {
-              pushToBuffer(TokenType.EQUALS, new char[] {'='}, -1, -1, -5);
+              pushToBuffer(TokenType.EQUALS, EQUALS, -1, -1, -5);
               pushPeekToBuffer();
               diagnostic(
                   "1 Attribute must be followed by '=' character", getPeekLine(), getPeekColumn());
@@ -72,7 +75,7 @@ public class XmlFilter extends AbstractXmlFilter {
             pushPeekToBuffer();
           }
           default -> {
-            pushToBuffer(TokenType.ATTR_QUOTE, new char[] {'"'}, -1, -1, -6);
+            pushToBuffer(TokenType.ATTR_QUOTE, QUOTE, -1, -1, -6);
             diagnostic("Close quote is expected for attribute", getPeekLine(), getPeekColumn());
             pushPeekToBuffer();
           }
@@ -82,7 +85,19 @@ public class XmlFilter extends AbstractXmlFilter {
         var stackHead = elementStack.peek();
         if (stackHead != null) {
           var stackName = stackHead.name();
-          if (!Arrays.equals(getText(), stackName) && Utils.startsWith(stackName, getText())) {
+          var stackStart = stackHead.nameStart();
+          var stackLength = stackHead.nameLength();
+          var text = getTextBuffer();
+          var textStart = getTextStart();
+          var textLength = getTextLength();
+          if (textLength < stackLength
+              && Arrays.equals(
+                  stackName,
+                  stackStart,
+                  stackStart + textLength,
+                  text,
+                  textStart,
+                  textStart + textLength)) {
             diagnostic(
                 "End element name doesn't match start element name",
                 stackHead.row() - 1,
@@ -90,9 +105,9 @@ public class XmlFilter extends AbstractXmlFilter {
                 stackHead.endColumn() - 1);
             logger.debug(
                 "Correct end tag name from {} to {}",
-                String.valueOf(getText()),
-                String.valueOf(stackName));
-            setText(stackName);
+                String.valueOf(text, textStart, textLength),
+                String.valueOf(stackName, stackStart, stackLength));
+            setText(stackName, stackStart, stackLength);
           }
         }
         while (true) {
@@ -106,7 +121,7 @@ public class XmlFilter extends AbstractXmlFilter {
               continue;
             }
             default -> {
-              pushToBuffer(TokenType.ELEMENT_END, new char[] {'>'}, -1, -1, -7);
+              pushToBuffer(TokenType.ELEMENT_END, GT, -1, -1, -7);
               pushPeekToBuffer();
               diagnostic(
                   "End element name must be followed by '>' character",
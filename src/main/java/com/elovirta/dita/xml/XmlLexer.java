@@ -1,5 +1,6 @@
 package com.elovirta.dita.xml;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import org.eclipse.lsp4j.Diagnostic;
@@ -60,7 +61,26 @@ public interface XmlLexer extends Iterator<XmlLexer.TokenType> {
 
   TokenType getType();
 
-  char[] getText();
+  /**
+   * Get token text as a new array. Prefer {@link #getTextBuffer()} with {@link #getTextStart()} and
+   * {@link #getTextLength()} which do not allocate.
+   */
+  default char[] getText() {
+    var start = getTextStart();
+    return Arrays.copyOfRange(getTextBuffer(), start, start + getTextLength());
+  }
+
+  /**
+   * Get buffer that contains token text. The buffer is shared and must not be modified; it is
+   * usually the lexer input.
+   */
+  char[] getTextBuffer();
+
+  /** Get start index of token text in the text buffer. */
+  int getTextStart();
+
+  /** Get length of token text. */
+  int getTextLength();
 
   int getLine();
 
@@ -6,9 +6,27 @@ import org.eclipse.lsp4j.Diagnostic;
 
 public class XmlLexerImpl implements XmlLexer {
 
+  private static final char[] EMPTY = new char[0];
+  private static final char[] LT = {'<'};
+  private static final char[] LT_SLASH = {'<', '/'};
+  private static final char[] GT = {'>'};
+  private static final char[] SLASH_GT = {'/', '>'};
+  private static final char[] EQUALS = {'='};
+  private static final char[] DOUBLE_QUOTE = {'"'};
+  private static final char[] SINGLE_QUOTE = {'\''};
+  private static final char[] COMMENT_OPEN = {'<', '!', '-', '-'};
+  private static final char[] COMMENT_CLOSE = {'-', '-', '>'};
+  private static final char[] CDATA_OPEN = {'<', '!', '[', 'C', 'D', 'A', 'T', 'A', '['};
+  private static final char[] PI_OPEN = {'<', '?'};
+  private static final char[] PI_CLOSE = {'?', '>'};
+  private static final char[] XML_DECL_OPEN = {'<', '?', 'x', 'm', 'l'};
+  private static final char[] DOCTYPE_OPEN = {'<', '!', 'D', 'O', 'C', 'T', 'Y', 'P', 'E'};
+  private static final char[] INVALID_NAME_START = "Invalid name start character".toCharArray();
+  private static final char[] LT_IN_ATTR_VALUE = "< not allowed in attribute value".toCharArray();
+
   private final boolean errorCorrection;
 
-  private enum State {
+  enum State {
     CONTENT,
     DOCTYPE,
     COMMENT,
@@ -26,7 +44,9 @@ public class XmlLexerImpl implements XmlLexer {
   private int column;
 
   private TokenType currentType;
-  private char[] currentText;
+  private char[] currentTextBuffer;
+  private int currentTextStart;
+  private int currentTextLength;
   private int currentLine;
   private int currentColumn;
   private int currentOffset;
@@ -41,15 +61,56 @@ public class XmlLexerImpl implements XmlLexer {
     this.errorCorrection = errorCorrection;
   }
 
+  /**
+   * Lexer state at a token boundary.
+   *
+   * @param offset input offset of the next token
+   * @param line line of the next token
+   * @param column column of the next token
+   */
+  public record Checkpoint(
+      int offset, int line, int column, State state, boolean inAttrValue, char attrValueQuote) {
+    /** Test if lexing from this and the other checkpoint produces the same tokens. */
+    public boolean hasSameState(Checkpoint that) {
+      return column == that.column
+          && state == that.state
+          && inAttrValue == that.inAttrValue
+          && attrValueQuote == that.attrValueQuote;
+    }
+
+    /** Move checkpoint by given offset and line difference. */
+    public Checkpoint shift(int offsetDelta, int lineDelta) {
+      return new Checkpoint(
+          offset + offsetDelta, line + lineDelta, column, state, inAttrValue, attrValueQuote);
+    }
+  }
+
+  private static final Checkpoint START = new Checkpoint(0, 1, 1, State.CONTENT, false, '\0');
+
   public void setInput(char[] input) {
+    setInput(input, START);
+  }
+
+  /**
+   * Set input and resume lexing from a checkpoint.
+   *
+   * @param input input to lex
+   * @param checkpoint checkpoint taken from an earlier lexing run
+   */
+  public void setInput(char[] input, Checkpoint checkpoint) {
     this.input = input;
-    this.pos = 0;
-    this.line = 1;
-    this.column = 1;
+    this.pos = checkpoint.offset();
+    this.line = checkpoint.line();
+    this.column = checkpoint.column();
     this.hasNext = true;
-    this.state = State.CONTENT;
-    this.inAttrValue = false;
-    this.attrValueQuote = '\0';
+    this.state = checkpoint.state();
+    this.inAttrValue = checkpoint.inAttrValue();
+    this.attrValueQuote = checkpoint.attrValueQuote();
+  }
+
+  /** Get lexer state before the next token. */
+  public Checkpoint checkpoint() {
+    return new Checkpoint(pos, line, column, state, inAttrValue, attrValueQuote);
   }
 
   @Override
@@ -78,8 +139,18 @@ public class XmlLexerImpl implements XmlLexer {
   }
 
   @Override
-  public char[] getText() {
-    return currentText;
+  public char[] getTextBuffer() {
+    return currentTextBuffer;
+  }
+
+  @Override
+  public int getTextStart() {
+    return currentTextStart;
+  }
+
+  @Override
+  public int getTextLength() {
+    return currentTextLength;
   }
 
   @Override
@@ -104,7 +175,7 @@ public class XmlLexerImpl implements XmlLexer {
 
   private TokenType nextToken() {
     if (pos >= input.length) {
-      return setCurrentToken(TokenType.EOF, new char[0], line, column, pos);
+      return setCurrentToken(TokenType.EOF, EMPTY, line, column, pos);
     }
 
     char ch = peek();
@@ -266,8 +337,7 @@ public class XmlLexerImpl implements XmlLexer {
       advance();
     }
 
-    return setCurrentToken(
-        TokenType.WHITESPACE, copyRange(startPos, pos), startLine, startCol, startPos);
+    return setCurrentToken(TokenType.WHITESPACE, startPos, pos, startLine, startCol);
   }
 
   private TokenType scanElementStart() {
@@ -278,8 +348,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '<'
 
     state = State.START_ELEM;
-    return setCurrentToken(
-        TokenType.ELEMENT_START, new char[] {'<'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ELEMENT_START, LT, startLine, startCol, startPos);
   }
 
   private TokenType scanElementClose() {
@@ -291,8 +360,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '/'
 
     state = State.END_ELEM;
-    return setCurrentToken(
-        TokenType.ELEMENT_CLOSE, new char[] {'<', '/'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ELEMENT_CLOSE, LT_SLASH, startLine, startCol, startPos);
   }
 
   private TokenType scanElementEnd() {
@@ -303,7 +371,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '>'
 
     state = State.CONTENT;
-    return setCurrentToken(TokenType.ELEMENT_END, new char[] {'>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ELEMENT_END, GT, startLine, startCol, startPos);
   }
 
   private TokenType elementEnd() {
@@ -312,7 +380,7 @@ public class XmlLexerImpl implements XmlLexer {
     int startCol = column;
 
     state = State.CONTENT;
-    return setCurrentToken(TokenType.ELEMENT_END, new char[] {'>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ELEMENT_END, GT, startLine, startCol, startPos);
   }
 
   private TokenType scanEmptyElementEnd() {
@@ -324,8 +392,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '>'
 
     state = State.CONTENT;
-    return setCurrentToken(
-        TokenType.EMPTY_ELEMENT_END, new char[] {'/', '>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.EMPTY_ELEMENT_END, SLASH_GT, startLine, startCol, startPos);
   }
 
   private TokenType scanName(TokenType type) {
@@ -334,12 +401,7 @@ public class XmlLexerImpl implements XmlLexer {
     int startCol = column;
 
     if (!isNameStartChar(peek())) {
-      return setCurrentToken(
-          TokenType.ERROR,
-          "Invalid name start character".toCharArray(),
-          startLine,
-          startCol,
-          startPos);
+      return setCurrentToken(TokenType.ERROR, INVALID_NAME_START, startLine, startCol, startPos);
     }
 
     advance();
@@ -348,7 +410,7 @@ public class XmlLexerImpl implements XmlLexer {
       advance();
     }
 
-    return setCurrentToken(type, copyRange(startPos, pos), startLine, startCol, startPos);
+    return setCurrentToken(type, startPos, pos, startLine, startCol);
   }
 
   private TokenType scanEquals() {
@@ -357,7 +419,7 @@ public class XmlLexerImpl implements XmlLexer {
     int startCol = column;
 
     advance(); // consume '='
-    return setCurrentToken(TokenType.EQUALS, new char[] {'='}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.EQUALS, EQUALS, startLine, startCol, startPos);
   }
 
   private TokenType scanAttrValueOpen() {
@@ -371,7 +433,7 @@ public class XmlLexerImpl implements XmlLexer {
     inAttrValue = true;
     attrValueQuote = quote;
 
-    return setCurrentToken(TokenType.ATTR_QUOTE, new char[] {quote}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ATTR_QUOTE, quoteText(quote), startLine, startCol, startPos);
   }
 
   private TokenType scanAttrValue() {
@@ -394,12 +456,7 @@ public class XmlLexerImpl implements XmlLexer {
         if (isNameStartChar(next) || next == '!' || next == '?' || next == '/') {
           break;
         } else {
-          return setCurrentToken(
-              TokenType.ERROR,
-              "< not allowed in attribute value".toCharArray(),
-              startLine,
-              startCol,
-              startPos);
+          return setCurrentToken(TokenType.ERROR, LT_IN_ATTR_VALUE, startLine, startCol, startPos);
         }
       } else if (ch == '&') {
         break;
@@ -407,8 +464,7 @@ public class XmlLexerImpl implements XmlLexer {
       advance();
     }
 
-    return setCurrentToken(
-        TokenType.ATTR_VALUE, copyRange(startPos, pos), startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ATTR_VALUE, startPos, pos, startLine, startCol);
   }
 
   private TokenType scanAttrValueClose() {
@@ -422,7 +478,7 @@ public class XmlLexerImpl implements XmlLexer {
     inAttrValue = false;
     attrValueQuote = '\0';
 
-    return setCurrentToken(TokenType.ATTR_QUOTE, new char[] {quote}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ATTR_QUOTE, quoteText(quote), startLine, startCol, startPos);
   }
 
   private TokenType attrValueEnd() {
@@ -436,7 +492,7 @@ public class XmlLexerImpl implements XmlLexer {
     attrValueQuote = '\0';
 
     state = State.START_ELEM;
-    return setCurrentToken(TokenType.ATTR_QUOTE, new char[] {quote}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.ATTR_QUOTE, quoteText(quote), startLine, startCol, startPos);
   }
 
   private TokenType scanCommentStart() {
@@ -450,8 +506,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '-'
 
     state = State.COMMENT;
-    return setCurrentToken(
-        TokenType.COMMENT_START, new char[] {'<', '!', '-', '-'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.COMMENT_START, COMMENT_OPEN, startLine, startCol, startPos);
   }
 
   private TokenType scanCommentBody() {
@@ -466,8 +521,7 @@ public class XmlLexerImpl implements XmlLexer {
       advance();
     }
 
-    return setCurrentToken(
-        TokenType.COMMENT_BODY, copyRange(startPos, pos), startLine, startCol, startPos);
+    return setCurrentToken(TokenType.COMMENT_BODY, startPos, pos, startLine, startCol);
   }
 
   private TokenType scanCommentEnd() {
@@ -480,8 +534,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '>'
 
     state = State.CONTENT;
-    return setCurrentToken(
-        TokenType.COMMENT_END, new char[] {'-', '-', '>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.COMMENT_END, COMMENT_CLOSE, startLine, startCol, startPos);
   }
 
   private TokenType scanCData() {
@@ -492,12 +545,7 @@ public class XmlLexerImpl implements XmlLexer {
     // Consume '<![CDATA['
     for (int i = 0; i < 9; i++) advance();
 
-    return setCurrentToken(
-        TokenType.CDATA_START,
-        new char[] {'<', '!', '[', 'C', 'D', 'A', 'T', 'A', '['},
-        startLine,
-        startCol,
-        startPos);
+    return setCurrentToken(TokenType.CDATA_START, CDATA_OPEN, startLine, startCol, startPos);
   }
 
   private TokenType scanPiStart() {
@@ -509,8 +557,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // '?'
 
     state = State.PI;
-    return setCurrentToken(
-        TokenType.PI_START, new char[] {'<', '?'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.PI_START, PI_OPEN, startLine, startCol, startPos);
   }
 
   private TokenType scanPiEnd() {
@@ -522,7 +569,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '>'
 
     state = State.CONTENT;
-    return setCurrentToken(TokenType.PI_END, new char[] {'?', '>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.PI_END, PI_CLOSE, startLine, startCol, startPos);
   }
 
   private TokenType scanXmlDeclStart() {
@@ -537,12 +584,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume 'l'
 
     state = State.XML_DECL;
-    return setCurrentToken(
-        TokenType.XML_DECL_START,
-        new char[] {'<', '?', 'x', 'm', 'l'},
-        startLine,
-        startCol,
-        startPos);
+    return setCurrentToken(TokenType.XML_DECL_START, XML_DECL_OPEN, startLine, startCol, startPos);
   }
 
   private TokenType scanXmlDeclEnd() {
@@ -554,8 +596,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '>'
 
     state = State.CONTENT;
-    return setCurrentToken(
-        TokenType.XML_DECL_END, new char[] {'?', '>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.XML_DECL_END, PI_CLOSE, startLine, startCol, startPos);
   }
 
   private TokenType scanDocTypeStart() {
@@ -567,12 +608,7 @@ public class XmlLexerImpl implements XmlLexer {
     for (int i = 0; i < 9; i++) advance();
 
     state = State.DOCTYPE;
-    return setCurrentToken(
-        TokenType.DOCTYPE_START,
-        new char[] {'<', '!', 'D', 'O', 'C', 'T', 'Y', 'P', 'E'},
-        startLine,
-        startCol,
-        startPos);
+    return setCurrentToken(TokenType.DOCTYPE_START, DOCTYPE_OPEN, startLine, startCol, startPos);
   }
 
   private TokenType scanDocTypeEnd() {
@@ -583,7 +619,7 @@ public class XmlLexerImpl implements XmlLexer {
     advance(); // consume '>'
 
     state = State.CONTENT;
-    return setCurrentToken(TokenType.DOCTYPE_END, new char[] {'>'}, startLine, startCol, startPos);
+    return setCurrentToken(TokenType.DOCTYPE_END, GT, startLine, startCol, startPos);
   }
 
   private TokenType scanReference() {
@@ -610,8 +646,7 @@ public class XmlLexerImpl implements XmlLexer {
         advance();
       }
 
-      return setCurrentToken(
-          TokenType.CHAR_REF, copyRange(startPos, pos), startLine, startCol, startPos);
+      return setCurrentToken(TokenType.CHAR_REF, startPos, pos, startLine, startCol);
     } else {
       while (pos < input.length && isNameChar(peek())) {
         advance();
@@ -621,8 +656,7 @@ public class XmlLexerImpl implements XmlLexer {
         advance();
       }
 
-      return setCurrentToken(
-          TokenType.ENTITY_REF, copyRange(startPos, pos), startLine, startCol, startPos);
+      return setCurrentToken(TokenType.ENTITY_REF, startPos, pos, startLine, startCol);
     }
   }
 
@@ -646,8 +680,7 @@ public class XmlLexerImpl implements XmlLexer {
       advance();
     }
 
-    return setCurrentToken(
-        TokenType.CHAR_DATA, copyRange(startPos, pos), startLine, startCol, startPos);
+    return setCurrentToken(TokenType.CHAR_DATA, startPos, pos, startLine, startCol);
   }
 
   // Character classification based on XML 1.1 EBNF
@@ -697,6 +730,10 @@ public class XmlLexerImpl implements XmlLexer {
     return isWhitespace(peek(offset));
   }
 
+  private static char[] quoteText(char quote) {
+    return quote == '"' ? DOUBLE_QUOTE : SINGLE_QUOTE;
+  }
+
   // Position tracking helpers
 
   private char peek() {
@@ -714,13 +751,6 @@ public class XmlLexerImpl implements XmlLexer {
     return start < input.length ? new String(input, start, end - start) : "";
   }
 
-  private char[] copyRange(int start, int end) {
-    int length = end - start;
-    char[] result = new char[length];
-    System.arraycopy(input, start, result, 0, length);
-    return result;
-  }
-
   private void advance() {
     if (pos < input.length) {
       char ch = input[pos];
@@ -744,10 +774,24 @@ public class XmlLexerImpl implements XmlLexer {
 
   private TokenType setCurrentToken(TokenType type, char[] text, int line, int column, int offset) {
     this.currentType = type;
-    this.currentText = text;
+    this.currentTextBuffer = text;
+    this.currentTextStart = 0;
+    this.currentTextLength = text.length;
     this.currentLine = line;
     this.currentColumn = column;
     this.currentOffset = offset;
     return type;
   }
+
+  /** Set current token with text from input range. */
+  private TokenType setCurrentToken(TokenType type, int start, int end, int line, int column) {
+    this.currentType = type;
+    this.currentTextBuffer = input;
+    this.currentTextStart = start;
+    this.currentTextLength = end - start;
+    this.currentLine = line;
+    this.currentColumn = column;
+    this.currentOffset = start;
+    return type;
+  }
 }
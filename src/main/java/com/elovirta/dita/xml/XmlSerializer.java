@@ -3,106 +3,137 @@ package com.elovirta.dita.xml;
 import static javax.xml.XMLConstants.*;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.*;
 import org.eclipse.lsp4j.Diagnostic;
 
 public class XmlSerializer {
 
-  public static final String LOC_NAMESPACE = "loc:";
-  public static final String LOC_PREFIX = "loc";
-  public static final String LOC_ATTR_PREFIX = "attr-";
-
   private final XmlLexer lexer;
   private Writer writer;
   private boolean isFirstElement = true;
+  private boolean hasDoctype;
+  private LocationTable locations = new LocationTable();
 
-  private static class AttributeLocation {
-    String prefix;
-    String localName;
-    int startLine;
-    int startColumn;
-    int endLine;
-    int endColumn;
+  public XmlSerializer() {
+    this(new XmlLexerImpl(true));
   }
 
-  public XmlSerializer() {
-    this.lexer = new XmlFilter(new XmlLexerImpl(true));
+  public XmlSerializer(XmlLexer lexer) {
+    this.lexer = new XmlFilter(lexer);
   }
 
   public record Features(boolean hasDoctype) {}
 
   public Features serialize(char[] input, Writer writer) throws IOException {
+    start(input, writer);
+    while (writeNext()) {
+      // Serialize all tokens
+    }
+    writer.flush();
+    return getFeatures();
+  }
+
+  /**
+   * Start incremental serialization.
+   *
+   * @param input input to serialize
+   * @param writer writer to serialize to
+   */
+  void start(char[] input, Writer writer) {
     this.writer = writer;
     this.isFirstElement = true;
+    this.hasDoctype = false;
+    this.locations = new LocationTable();
     lexer.setInput(input);
-    boolean hasDoctype = false;
+  }
 
-    while (lexer.hasNext()) {
-      XmlLexer.TokenType type = lexer.next();
+  /**
+   * Serialize next markup construct. Start tags are written as a single unit with their location
+   * attributes.
+   *
+   * @return {@code false} if all input has been serialized
+   */
+  boolean writeNext() throws IOException {
+    if (!lexer.hasNext()) {
+      return false;
+    }
+    XmlLexer.TokenType type = lexer.next();
 
-      switch (type) {
-        case XML_DECL_START:
-          skipXmlDecl();
-          break;
-        case COMMENT_START:
-          skipComment();
-          break;
-        case DOCTYPE_START:
-          hasDoctype = true;
-          writeDocType();
-          break;
-        case ELEMENT_START:
-          writeStartElement();
-          break;
-        case ELEMENT_CLOSE:
-        case ELEMENT_END:
-        case EMPTY_ELEMENT_END:
-        case ELEMENT_NAME_START:
-        case ELEMENT_NAME_END:
-        case ATTR_NAME:
-        case PI_NAME:
-        case EQUALS:
-        case ATTR_QUOTE:
-        case ATTR_VALUE:
-        case CHAR_DATA:
-        case WHITESPACE:
-        case ENTITY_REF:
-        case CHAR_REF:
-        case PI_START:
-        case PI_END:
-        case CDATA_START:
-        case CDATA_END:
-          writeToken();
-          break;
-        case EOF:
-          break;
-        case ERROR:
-          throw new IOException(
-              "Lexer error at "
-                  + lexer.getLine()
-                  + ":"
-                  + lexer.getColumn()
-                  + " - "
-                  + new String(lexer.getText()));
-        default:
-          writeToken();
-          break;
-      }
+    switch (type) {
+      case XML_DECL_START:
+        skipXmlDecl();
+        break;
+      case COMMENT_START:
+        skipComment();
+        break;
+      case DOCTYPE_START:
+        hasDoctype = true;
+        writeDocType();
+        break;
+      case ELEMENT_START:
+        writeStartElement();
+        break;
+      case ELEMENT_CLOSE:
+      case ELEMENT_END:
+      case EMPTY_ELEMENT_END:
+      case ELEMENT_NAME_START:
+      case ELEMENT_NAME_END:
+      case ATTR_NAME:
+      case PI_NAME:
+      case EQUALS:
+      case ATTR_QUOTE:
+      case ATTR_VALUE:
+      case CHAR_DATA:
+      case WHITESPACE:
+      case ENTITY_REF:
+      case CHAR_REF:
+      case PI_START:
+      case PI_END:
+      case CDATA_START:
+      case CDATA_END:
+        writeToken();
+        break;
+      case EOF:
+        break;
+      case ERROR:
+        throw new IOException(
+            "Lexer error at " + lexer.getLine() + ":" + lexer.getColumn() + " - " + tokenText());
+      default:
+        writeToken();
+        break;
     }
+    return true;
+  }
 
-    writer.flush();
+  /** Test if the root element start tag has been serialized. */
+  boolean isPrologDone() {
+    return !isFirstElement;
+  }
 
+  public Features getFeatures() {
     return new Features(hasDoctype);
   }
 
+  /** Get source locations of serialized elements and attributes. */
+  public LocationTable getLocations() {
+    return locations;
+  }
+
   public List<Diagnostic> getDiagnostics() {
     return lexer.getDiagnostics();
   }
 
   private void writeToken() throws IOException {
-    writer.write(lexer.getText());
+    writer.write(lexer.getTextBuffer(), lexer.getTextStart(), lexer.getTextLength());
+  }
+
+  private void appendToken(StringBuilder buf) {
+    buf.append(lexer.getTextBuffer(), lexer.getTextStart(), lexer.getTextLength());
+  }
+
+  private String tokenText() {
+    return new String(lexer.getTextBuffer(), lexer.getTextStart(), lexer.getTextLength());
   }
 
   private void skipXmlDecl() {
@@ -124,11 +155,11 @@ public class XmlSerializer {
   }
 
   private void writeDocType() throws IOException {
-    writer.write(lexer.getText());
+    writeToken();
 
     while (lexer.hasNext()) {
       XmlLexer.TokenType type = lexer.next();
-      writer.write(lexer.getText());
+      writeToken();
 
       if (type == XmlLexer.TokenType.DOCTYPE_END) {
         break;
@@ -137,7 +168,7 @@ public class XmlSerializer {
   }
 
   private void writeStartElement() throws IOException {
-    writer.write(lexer.getText());
+    writeToken();
 
     if (!lexer.hasNext()) {
       return;
@@ -145,61 +176,16 @@ public class XmlSerializer {
 
     XmlLexer.TokenType type = lexer.next();
     if (type != XmlLexer.TokenType.ELEMENT_NAME_START) {
-      writer.write(lexer.getText());
+      writeToken();
       return;
     }
 
-    writer.write(lexer.getText());
-
-    // Add loc namespace declaration to root element
-    if (isFirstElement) {
-      writer.write(" ");
-      writer.write(XMLNS_ATTRIBUTE);
-      writer.write(":");
-      writer.write(LOC_PREFIX);
-      writer.write("=\"");
-      writer.write(LOC_NAMESPACE);
-      writer.write("\"");
-      isFirstElement = false;
-
-      writer.write(" ");
-      writer.write(XMLNS_ATTRIBUTE);
-      writer.write(":");
-      writer.write(LOC_PREFIX);
-      writer.write("-");
-      writer.write(XML_NS_PREFIX);
-      writer.write("=\"");
-      writer.write(LOC_NAMESPACE);
-      writer.write(XML_NS_URI);
-      writer.write("\"");
-
-      writer.write(" ");
-      writer.write(XMLNS_ATTRIBUTE);
-      writer.write(":");
-      writer.write(LOC_PREFIX);
-      writer.write("-");
-      writer.write(XMLNS_ATTRIBUTE);
-      writer.write("=\"");
-      writer.write(LOC_NAMESPACE);
-      writer.write(XMLNS_ATTRIBUTE_NS_URI);
-      writer.write("\"");
-    }
+    writeToken();
+
+    isFirstElement = false;
+    locations.addElement(
+        lexer.getLine(), lexer.getColumn(), lexer.getColumn() + lexer.getTextLength());
 
-    writer.write(" ");
-    writer.write(LOC_PREFIX);
-    writer.write(":elem=\"");
-    writer.write(Integer.toString(lexer.getLine()));
-    writer.write(":");
-    writer.write(Integer.toString(lexer.getColumn()));
-    writer.write("-");
-    writer.write(Integer.toString(lexer.getLine()));
-    writer.write(":");
-    writer.write(Integer.toString(lexer.getColumn() + lexer.getText().length));
-    writer.write("\"");
-
-    // Collect attributes and their locations
-    List<AttributeLocation> attrLocations = new ArrayList<>();
-    Map<String, String> namespaceDeclarations = new HashMap<>();
     StringBuilder bufferedContent = new StringBuilder();
 
     // Parse attributes until we hit '>' or '/>'
@@ -210,53 +196,12 @@ public class XmlSerializer {
         // Write all buffered content
         writer.write(bufferedContent.toString());
 
-        // Write location attributes
-        for (AttributeLocation loc : attrLocations) {
-          writer.write(" ");
-          writer.write(LOC_PREFIX);
-          if (loc.prefix != null) {
-            writer.write("-");
-            writer.write(loc.prefix);
-          }
-          writer.write(":attr-");
-          writer.write(loc.localName);
-          writer.write("=\"");
-          writer.write(Integer.toString(loc.startLine));
-          writer.write(":");
-          writer.write(Integer.toString(loc.startColumn));
-          writer.write("-");
-          writer.write(Integer.toString(loc.endLine));
-          writer.write(":");
-          writer.write(Integer.toString(loc.endColumn));
-          writer.write("\"");
-        }
-        namespaceDeclarations.forEach(
-            (key, value) -> {
-              try {
-                writer.write(" ");
-                writer.write(XMLNS_ATTRIBUTE);
-                writer.write(":");
-                writer.write(LOC_PREFIX);
-                writer.write("-");
-                writer.write(key);
-                writer.write("=\"");
-                writer.write(value);
-                writer.write("\"");
-              } catch (IOException e) {
-                throw new UncheckedIOException(e);
-              }
-            });
-
         // Write closing '>' or '/>'
-        writer.write(lexer.getText());
+        writeToken();
         break;
       } else if (type == XmlLexer.TokenType.ATTR_NAME) {
-        String attrName = new String(lexer.getText());
-        bufferedContent.append(lexer.getText());
-
-        String namespacePrefix =
-            attrName.startsWith(XMLNS_ATTRIBUTE + ":") ? attrName.substring(6) : null;
-        StringBuilder namespaceUri = namespacePrefix != null ? new StringBuilder() : null;
+        String attrName = tokenText();
+        appendToken(bufferedContent);
 
         boolean foundValue = false;
         int valueStartLine = 0;
@@ -266,7 +211,7 @@ public class XmlSerializer {
 
         while (lexer.hasNext()) {
           type = lexer.next();
-          bufferedContent.append(lexer.getText());
+          appendToken(bufferedContent);
 
           if (type == XmlLexer.TokenType.ATTR_QUOTE) {
             if (!foundValue) {
@@ -278,11 +223,8 @@ public class XmlSerializer {
                   valueStartLine = lexer.getLine();
                   valueStartColumn = lexer.getColumn();
                   valueEndLine = lexer.getLine();
-                  valueEndColumn = lexer.getColumn() + lexer.getText().length - 1;
-                  bufferedContent.append(lexer.getText());
-                  if (namespacePrefix != null) {
-                    namespaceUri.append(lexer.getText());
-                  }
+                  valueEndColumn = lexer.getColumn() + lexer.getTextLength() - 1;
+                  appendToken(bufferedContent);
                   foundValue = true;
                 } else if (type == XmlLexer.TokenType.ATTR_QUOTE) {
                   // Empty attribute value
@@ -290,22 +232,19 @@ public class XmlSerializer {
                   valueStartColumn = lexer.getColumn();
                   valueEndLine = lexer.getLine();
                   valueEndColumn = lexer.getColumn();
-                  bufferedContent.append(lexer.getText());
+                  appendToken(bufferedContent);
                   break;
                 }
               }
             } else {
               // Closing quote - we're done with this attribute
-              if (namespacePrefix != null) {
-                namespaceDeclarations.put(namespacePrefix, namespaceUri.toString());
-              }
               break;
             }
           } else if (type == XmlLexer.TokenType.ENTITY_REF || type == XmlLexer.TokenType.CHAR_REF) {
             // References in attribute values - update end position
             if (foundValue) {
               valueEndLine = lexer.getLine();
-              valueEndColumn = lexer.getColumn() + lexer.getText().length - 1;
+              valueEndColumn = lexer.getColumn() + lexer.getTextLength() - 1;
             }
           } else if (type == XmlLexer.TokenType.EQUALS || type == XmlLexer.TokenType.WHITESPACE) {
             // Continue
@@ -316,24 +255,12 @@ public class XmlSerializer {
         }
 
         // Store attribute location
-        AttributeLocation loc = new AttributeLocation();
-        var index = attrName.indexOf(':');
-        if (index != -1) {
-          loc.prefix = attrName.substring(0, index);
-          loc.localName = attrName.substring(index + 1);
-        } else {
-          loc.prefix = null;
-          loc.localName = attrName;
-        }
-        if (!Objects.equals(loc.prefix, XMLNS_ATTRIBUTE)) {
-          loc.startLine = valueStartLine;
-          loc.startColumn = valueStartColumn;
-          loc.endLine = valueEndLine;
-          loc.endColumn = valueEndColumn;
-          attrLocations.add(loc);
+        if (!attrName.equals(XMLNS_ATTRIBUTE) && !attrName.startsWith(XMLNS_ATTRIBUTE + ":")) {
+          locations.addAttribute(
+              attrName, valueStartLine, valueStartColumn, valueEndLine, valueEndColumn);
         }
       } else {
-        bufferedContent.append(lexer.getText());
+        appendToken(bufferedContent);
       }
     }
   }
@@ -0,0 +1,77 @@
+package com.elovirta.dita.xml;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import org.eclipse.lsp4j.Diagnostic;
+
+/**
+ * Reader that serializes the input on demand. Only the markup construct being read is buffered,
+ * the serialized document is never materialized as a whole.
+ */
+public class XmlSerializerReader extends Reader {
+
+  private final XmlSerializer serializer;
+  private final TokenBuffer buffer = new TokenBuffer();
+  private int position;
+  private boolean done;
+
+  public XmlSerializerReader(XmlSerializer serializer, char[] input) {
+    this.serializer = serializer;
+    serializer.start(input, buffer);
+  }
+
+  /**
+   * Serialize input up to and including the root element start tag.
+   *
+   * @return document features found in the prolog
+   */
+  public XmlSerializer.Features readProlog() throws IOException {
+    while (!done && !serializer.isPrologDone()) {
+      done = !serializer.writeNext();
+    }
+    return serializer.getFeatures();
+  }
+
+  public LocationTable getLocations() {
+    return serializer.getLocations();
+  }
+
+  public List<Diagnostic> getDiagnostics() {
+    return serializer.getDiagnostics();
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (position == buffer.size()) {
+      if (done) {
+        return -1;
+      }
+      buffer.reset();
+      position = 0;
+      done = !serializer.writeNext();
+    }
+    var count = Math.min(len, buffer.size() - position);
+    System.arraycopy(buffer.array(), position, cbuf, off, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public void close() {
+    done = true;
+    buffer.reset();
+    position = 0;
+  }
+
+  /** Writer buffer that exposes its backing array. */
+  private static final class TokenBuffer extends CharArrayWriter {
+    char[] array() {
+      return buf;
+    }
+  }
+}
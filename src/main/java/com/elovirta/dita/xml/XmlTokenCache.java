@@ -0,0 +1,336 @@
+package com.elovirta.dita.xml;
+
+import com.elovirta.dita.xml.XmlLexer.TokenType;
+import com.elovirta.dita.xml.XmlLexerImpl.Checkpoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.eclipse.lsp4j.Diagnostic;
+
+/**
+ * Token stream of an open document that is re-lexed incrementally.
+ *
+ * <p>Lexer checkpoints are recorded at regular offsets. After an edit, lexing resumes from the
+ * nearest checkpoint before the edit and stops when the lexer state at a token boundary after the
+ * edit matches an old checkpoint. Tokens after that are reused from the previous stream.
+ */
+public class XmlTokenCache {
+
+  static final int CHECKPOINT_INTERVAL = 4096;
+  /** Longest lexer lookahead. Tokens that end closer than this to an edit are re-lexed. */
+  private static final int LOOKAHEAD = 10;
+
+  private final XmlLexerImpl lexer = new XmlLexerImpl(true);
+  private Tokens tokens;
+  private int editStart = -1;
+  private int editEnd;
+  private int editDelta;
+
+  /**
+   * Record an edit to the input. Edits are coalesced into a single dirty region until the next
+   * {@link #update(char[])}.
+   *
+   * @param start start offset, inclusive
+   * @param end end offset in the text before the edit, exclusive
+   * @param length length of the replacement text
+   */
+  public void edit(int start, int end, int length) {
+    var delta = length - (end - start);
+    if (editStart == -1) {
+      editStart = start;
+      editEnd = start + length;
+      editDelta = delta;
+      return;
+    }
+    int dirtyEnd;
+    if (editEnd <= start) {
+      dirtyEnd = editEnd;
+    } else if (editEnd >= end) {
+      dirtyEnd = editEnd + delta;
+    } else {
+      dirtyEnd = start + length;
+    }
+    editStart = Math.min(editStart, start);
+    editEnd = Math.max(dirtyEnd, start + length);
+    editDelta += delta;
+  }
+
+  /** Discard token stream, next update will lex the whole input. */
+  public void invalidate() {
+    tokens = null;
+    editStart = -1;
+  }
+
+  /**
+   * Lex input. Only the region changed since the previous update is re-lexed.
+   *
+   * @param input input after all recorded edits
+   */
+  public Tokens update(char[] input) {
+    if (tokens == null) {
+      tokens = lex(input, null, 0, 0, 0);
+    } else if (editStart != -1) {
+      tokens = lex(input, tokens, editStart, editEnd, editDelta);
+    } else if (tokens.input() != input) {
+      tokens = tokens.withInput(input);
+    }
+    editStart = -1;
+    return tokens;
+  }
+
+  private Tokens lex(char[] input, Tokens old, int start, int end, int delta) {
+    var buf = new TokenBuffer(old != null ? old.size() + 16 : Math.max(16, input.length / 8));
+    var oldCheckpoint = 0;
+    Checkpoint resume = null;
+    if (old != null) {
+      while (oldCheckpoint + 1 < old.checkpoints.size()
+          && old.checkpoints.get(oldCheckpoint + 1).state().offset() <= start - LOOKAHEAD) {
+        oldCheckpoint++;
+      }
+      var checkpoint = old.checkpoints.get(oldCheckpoint);
+      buf.addAll(old, 0, checkpoint.index(), 0, 0);
+      for (int i = 0; i < oldCheckpoint; i++) {
+        buf.checkpoints.add(old.checkpoints.get(i));
+      }
+      resume = checkpoint.state();
+      oldCheckpoint++;
+    }
+    if (resume == null) {
+      lexer.setInput(input);
+    } else {
+      lexer.setInput(input, resume);
+    }
+    var lastCheckpoint = -CHECKPOINT_INTERVAL;
+    while (lexer.hasNext()) {
+      var checkpoint = lexer.checkpoint();
+      if (old != null && checkpoint.offset() >= end) {
+        while (oldCheckpoint < old.checkpoints.size()
+            && old.checkpoints.get(oldCheckpoint).state().offset() + delta < checkpoint.offset()) {
+          oldCheckpoint++;
+        }
+        if (oldCheckpoint < old.checkpoints.size()) {
+          var match = old.checkpoints.get(oldCheckpoint);
+          if (match.state().offset() + delta == checkpoint.offset()
+              && match.state().hasSameState(checkpoint)) {
+            var lineDelta = checkpoint.line() - match.state().line();
+            var index = buf.size;
+            buf.addAll(old, match.index(), old.size(), delta, lineDelta);
+            for (int i = oldCheckpoint; i < old.checkpoints.size(); i++) {
+              var c = old.checkpoints.get(i);
+              buf.checkpoints.add(
+                  new TokenCheckpoint(
+                      index + c.index() - match.index(), c.state().shift(delta, lineDelta)));
+            }
+            return buf.toTokens(input);
+          }
+        }
+      }
+      if (checkpoint.offset() - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+        buf.checkpoints.add(new TokenCheckpoint(buf.size, checkpoint));
+        lastCheckpoint = checkpoint.offset();
+      }
+      lexer.next();
+      buf.add(
+          lexer.getType(),
+          lexer.getTextBuffer() != input ? lexer.getTextBuffer() : null,
+          lexer.getTextLength(),
+          lexer.getLine(),
+          lexer.getColumn(),
+          lexer.getOffset());
+    }
+    return buf.toTokens(input);
+  }
+
+  /** Lexer state before the token at index. */
+  record TokenCheckpoint(int index, Checkpoint state) {}
+
+  /**
+   * Immutable tokenized document content. Token text is a slice of input starting at token offset,
+   * except for tokens with constant text that is not in the input.
+   */
+  public static final class Tokens {
+    private final char[] input;
+    private final TokenType[] types;
+    /** Constant token text, or {@code null} if token text is in input. */
+    private final char[][] texts;
+    private final int[] lengths;
+    private final int[] lines;
+    private final int[] columns;
+    private final int[] offsets;
+    private final int size;
+    private final List<TokenCheckpoint> checkpoints;
+
+    private Tokens(
+        char[] input,
+        TokenType[] types,
+        char[][] texts,
+        int[] lengths,
+        int[] lines,
+        int[] columns,
+        int[] offsets,
+        int size,
+        List<TokenCheckpoint> checkpoints) {
+      this.input = input;
+      this.types = types;
+      this.texts = texts;
+      this.lengths = lengths;
+      this.lines = lines;
+      this.columns = columns;
+      this.offsets = offsets;
+      this.size = size;
+      this.checkpoints = checkpoints;
+    }
+
+    public char[] input() {
+      return input;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /** Create a lexer that replays the tokens. */
+    public XmlLexer lexer() {
+      return new TokenReplay(this);
+    }
+
+    private Tokens withInput(char[] input) {
+      return new Tokens(input, types, texts, lengths, lines, columns, offsets, size, checkpoints);
+    }
+  }
+
+  private static final class TokenBuffer {
+    private TokenType[] types;
+    private char[][] texts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    private int[] offsets;
+    private int size;
+    private final List<TokenCheckpoint> checkpoints = new ArrayList<>();
+
+    TokenBuffer(int capacity) {
+      types = new TokenType[capacity];
+      texts = new char[capacity][];
+      lengths = new int[capacity];
+      lines = new int[capacity];
+      columns = new int[capacity];
+      offsets = new int[capacity];
+    }
+
+    void add(TokenType type, char[] text, int length, int line, int column, int offset) {
+      ensureCapacity(size + 1);
+      types[size] = type;
+      texts[size] = text;
+      lengths[size] = length;
+      lines[size] = line;
+      columns[size] = column;
+      offsets[size] = offset;
+      size++;
+    }
+
+    void addAll(Tokens src, int from, int to, int offsetDelta, int lineDelta) {
+      var length = to - from;
+      ensureCapacity(size + length);
+      System.arraycopy(src.types, from, types, size, length);
+      System.arraycopy(src.texts, from, texts, size, length);
+      System.arraycopy(src.lengths, from, lengths, size, length);
+      System.arraycopy(src.columns, from, columns, size, length);
+      for (int i = 0; i < length; i++) {
+        lines[size + i] = src.lines[from + i] + lineDelta;
+        offsets[size + i] = src.offsets[from + i] + offsetDelta;
+      }
+      size += length;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > types.length) {
+        var newCapacity = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, newCapacity);
+        texts = Arrays.copyOf(texts, newCapacity);
+        lengths = Arrays.copyOf(lengths, newCapacity);
+        lines = Arrays.copyOf(lines, newCapacity);
+        columns = Arrays.copyOf(columns, newCapacity);
+        offsets = Arrays.copyOf(offsets, newCapacity);
+      }
+    }
+
+    Tokens toTokens(char[] input) {
+      return new Tokens(
+          input, types, texts, lengths, lines, columns, offsets, size, List.copyOf(checkpoints));
+    }
+  }
+
+  private static final class TokenReplay implements XmlLexer {
+    private final Tokens tokens;
+    private int index = -1;
+
+    TokenReplay(Tokens tokens) {
+      this.tokens = tokens;
+    }
+
+    @Override
+    public void setInput(char[] input) {
+      if (input != tokens.input) {
+        throw new IllegalArgumentException("Input does not match tokenized content");
+      }
+      index = -1;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index + 1 < tokens.size;
+    }
+
+    @Override
+    public TokenType next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      index++;
+      return tokens.types[index];
+    }
+
+    @Override
+    public TokenType getType() {
+      return tokens.types[index];
+    }
+
+    @Override
+    public char[] getTextBuffer() {
+      var text = tokens.texts[index];
+      return text != null ? text : tokens.input;
+    }
+
+    @Override
+    public int getTextStart() {
+      return tokens.texts[index] != null ? 0 : tokens.offsets[index];
+    }
+
+    @Override
+    public int getTextLength() {
+      return tokens.lengths[index];
+    }
+
+    @Override
+    public int getLine() {
+      return tokens.lines[index];
+    }
+
+    @Override
+    public int getColumn() {
+      return tokens.columns[index];
+    }
+
+    @Override
+    public int getOffset() {
+      return tokens.offsets[index];
+    }
+
+    @Override
+    public List<Diagnostic> getDiagnostics() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -2,16 +2,18 @@
 <xsl:stylesheet xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
                 xmlns:xs="http://www.w3.org/2001/XMLSchema"
                 xmlns:dita-ot="http://dita-ot.sourceforge.net/ns/201007/dita-ot"
+                xmlns:loc="loc:"
+                xmlns:merge="merge:"
                 version="3.0"
-                exclude-result-prefixes="xs dita-ot">
+                exclude-result-prefixes="xs dita-ot merge">
 
-  <xsl:variable name="root-base-uri" as="xs:anyURI" select="base-uri()"/>
+  <!-- Submaps are merged with the root map base URI as a parameter -->
+  <xsl:param name="root-base-uri" as="xs:anyURI" select="base-uri()"/>
 
   <xsl:template match="*[contains-token(@class, 'mapgroup-d/mapref')] | mapref">
     <!--    <xsl:message>Found mapref <xsl:value-of select="@href"/> (<xsl:value-of select="base-uri()"/>)</xsl:message>-->
-    <xsl:variable name="submap-uri" select="resolve-uri(@href, base-uri())"/>
-    <xsl:variable name="submap" as="document-node()" select="doc($submap-uri)"/>
-    <xsl:apply-templates select="$submap/*/*"/>
+    <!-- Merged submap content, cached by MapMerger -->
+    <xsl:sequence select="merge:submap(resolve-uri(@href, base-uri()), $root-base-uri)"/>
   </xsl:template>
 
   <xsl:template match="*[(empty(@format) or @format = 'dita') and
@@ -21,6 +23,17 @@
                                               dita-ot:abs(resolve-uri(., base-uri())))"/>
   </xsl:template>
 
+  <!-- Key definition locations for the merged map -->
+  <xsl:template match="*[@keys]" priority="-5">
+    <xsl:copy>
+      <xsl:apply-templates select="@*"/>
+      <xsl:for-each select="loc:elem(.)">
+        <xsl:attribute name="loc:elem" select="."/>
+      </xsl:for-each>
+      <xsl:apply-templates select="node()"/>
+    </xsl:copy>
+  </xsl:template>
+
   <xsl:template match="@* | node()" priority="-10">
     <xsl:copy>
       <xsl:apply-templates select="@* | node()"/>
@@ -0,0 +1,63 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.elovirta.dita.DependencyGraph.Dependency;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import net.sf.saxon.s9api.QName;
+import org.junit.jupiter.api.Test;
+
+class DependencyGraphTest {
+
+  private static final URI FIRST = URI.create("file:///first.dita");
+  private static final URI SECOND = URI.create("file:///second.dita");
+  private static final URI TARGET = URI.create("file:///target.dita");
+
+  private final DependencyGraph graph = new DependencyGraph();
+
+  @Test
+  void getDependents() {
+    graph.update(FIRST, Set.of(new Dependency.File(TARGET), new Dependency.Key("key")));
+    graph.update(SECOND, Set.of(new Dependency.Key("key")));
+
+    assertEquals(Set.of(FIRST), graph.getDependents(List.of(new Dependency.File(TARGET))));
+    assertEquals(Set.of(FIRST, SECOND), graph.getDependents(List.of(new Dependency.Key("key"))));
+    assertEquals(Set.of(), graph.getDependents(List.of(new Dependency.Key("other"))));
+  }
+
+  @Test
+  void getDependents_filter() {
+    graph.update(FIRST, Set.of(new Dependency.Attribute(new QName("audience"))));
+    graph.update(SECOND, Set.of(new Dependency.Attribute(new QName("platform"))));
+
+    var act =
+        graph.getDependents(
+            dependency ->
+                dependency instanceof Dependency.Attribute attribute
+                    && attribute.name().getLocalName().equals("platform"));
+
+    assertEquals(Set.of(SECOND), act);
+  }
+
+  @Test
+  void update() {
+    graph.update(FIRST, Set.of(new Dependency.Key("old")));
+    graph.update(FIRST, Set.of(new Dependency.Key("new")));
+
+    assertEquals(Set.of(), graph.getDependents(List.of(new Dependency.Key("old"))));
+    assertEquals(Set.of(FIRST), graph.getDependents(List.of(new Dependency.Key("new"))));
+    assertEquals(Set.of(new Dependency.Key("new")), graph.getDependencies(FIRST));
+  }
+
+  @Test
+  void remove() {
+    graph.update(FIRST, Set.of(new Dependency.Key("key")));
+    graph.remove(FIRST);
+    graph.remove(SECOND);
+
+    assertEquals(Set.of(), graph.getDependents(List.of(new Dependency.Key("key"))));
+    assertEquals(Set.of(), graph.getDependencies(FIRST));
+  }
+}
@@ -11,7 +11,6 @@ import org.eclipse.lsp4j.services.LanguageClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 class DitaLanguageServerTest {
@@ -37,7 +36,22 @@ class DitaLanguageServerTest {
     assertNotNull(initResult);
     assertNotNull(initResult.getCapabilities());
     assertEquals(
-        TextDocumentSyncKind.Full, initResult.getCapabilities().getTextDocumentSync().getLeft());
+        TextDocumentSyncKind.Incremental,
+        initResult.getCapabilities().getTextDocumentSync().getLeft());
+  }
+
+  @Test
+  void initialize_pullDiagnostics() throws ExecutionException, InterruptedException {
+    var textDocument = new TextDocumentClientCapabilities();
+    textDocument.setDiagnostic(new DiagnosticCapabilities());
+    var params = new InitializeParams();
+    params.setCapabilities(new ClientCapabilities(null, textDocument, null));
+
+    var act = server.initialize(params).get().getCapabilities().getDiagnosticProvider();
+
+    assertTrue(act.isInterFileDependencies());
+    // Open documents are pulled again after refresh, a workspace pull would return immediately
+    assertFalse(act.isWorkspaceDiagnostics());
   }
 
   @Test
@@ -54,7 +68,8 @@ class DitaLanguageServerTest {
     assertDoesNotThrow(() -> server.getTextDocumentService().didOpen(params));
 
     // Verify diagnostics were published
-    verify(mockClient, atLeastOnce()).publishDiagnostics(any(PublishDiagnosticsParams.class));
+    verify(mockClient, timeout(5000).atLeastOnce())
+        .publishDiagnostics(any(PublishDiagnosticsParams.class));
   }
 
   @Test
@@ -83,9 +98,6 @@ class DitaLanguageServerTest {
 
   @Test
   void testDidChange() {
-    var valueCapture = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
-    doNothing().when(mockClient).publishDiagnostics(valueCapture.capture());
-
     // Open document
     var openParams = new DidOpenTextDocumentParams();
     var document = new TextDocumentItem();
@@ -106,8 +118,8 @@ class DitaLanguageServerTest {
 
     server.getTextDocumentService().didChange(changeParams);
 
-    assertEquals(
-        new PublishDiagnosticsParams("file:///test.dita", List.of()), valueCapture.getValue());
+    verify(mockClient, timeout(5000))
+        .publishDiagnostics(new PublishDiagnosticsParams("file:///test.dita", List.of(), 2));
   }
 
   @Test
@@ -1,12 +1,18 @@
 package com.elovirta.dita;
 
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
 import com.elovirta.dita.DitaLanguageServer.Options;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class DitaParserTest {
 
@@ -39,6 +45,21 @@ public class DitaParserTest {
     //    System.out.println(act.toString());
   }
 
+  @Test
+  void setCacheBudget(@TempDir Path tempDir) throws IOException {
+    var first = tempDir.resolve("first.dita");
+    Files.writeString(first, "<topic id='first'/>");
+    var second = tempDir.resolve("second.dita");
+    Files.writeString(second, "<topic id='second'/>");
+    var cached = parser.read(first.toUri()).document();
+    assertSame(cached, parser.read(first.toUri()).document());
+
+    parser.setCacheBudget(0);
+    parser.read(second.toUri());
+
+    assertNotSame(cached, parser.read(first.toUri()).document());
+  }
+
   private String readResource(String path) {
     try (var in = getClass().getClassLoader().getResourceAsStream(path)) {
       return new String(in.readAllBytes(), StandardCharsets.UTF_8);
@@ -1,23 +1,35 @@
 package com.elovirta.dita;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 import com.elovirta.dita.DitaLanguageServer.Options;
+import com.elovirta.dita.TaskExecutors.Workload;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.CountDownLatch;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
@@ -45,7 +57,7 @@ class DitaTextDocumentServiceTest {
   @Test
   void testValidDitaDocument() {
     var validDita = readResource("topics/valid.dita");
-    textDocumentService.didOpen(createOpenParams("file:///topics/valid.dita", validDita));
+    didOpen(createOpenParams("file:///topics/valid.dita", validDita));
 
     var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
     verify(mockClient).publishDiagnostics(captor.capture());
@@ -60,7 +72,7 @@ class DitaTextDocumentServiceTest {
   void testInvalidDitaDocument() throws URISyntaxException {
     textDocumentService.setRootMapUri(getClass().getResource("/maps/keymap.ditamap").toURI());
     var invalidDita = readResource("invalid-keyref.dita");
-    textDocumentService.didOpen(createOpenParams("file:///invalid-keyref.dita", invalidDita));
+    didOpen(createOpenParams("file:///invalid-keyref.dita", invalidDita));
     var params = createChangeParams("file:///invalid-keyref.dita", invalidDita);
     textDocumentService.didChange(params);
 
@@ -86,7 +98,7 @@ class DitaTextDocumentServiceTest {
     String invalidDita = readResource("invalid-id.dita");
 
     DidOpenTextDocumentParams params = createOpenParams("file:///invalid-id.dita", invalidDita);
-    textDocumentService.didOpen(params);
+    didOpen(params);
 
     ArgumentCaptor<PublishDiagnosticsParams> captor =
         ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
@@ -111,6 +123,232 @@ class DitaTextDocumentServiceTest {
         diagnostics.getDiagnostics());
   }
 
+  @Test
+  void filesChanged(@TempDir Path tempDir) throws IOException {
+    var target = tempDir.resolve("target.dita");
+    Files.writeString(target, "<topic id='target'><title/><body><p id='old'/></body></topic>");
+    var source = tempDir.resolve("source.dita").toUri();
+    didOpen(
+        createOpenParams(
+            source.toString(),
+            "<topic id='source'><title/><body><p><xref href='target.dita#target/new'/></p></body>"
+                + "</topic>"));
+    var locale = ResourceBundle.getBundle("copy", Locale.ENGLISH);
+    var missing = locale.getString("error.keyref_id_missing").formatted("new");
+    var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
+    verify(mockClient, atLeastOnce()).publishDiagnostics(captor.capture());
+    assertTrue(
+        captor.getValue().getDiagnostics().stream().anyMatch(d -> d.getMessage().equals(missing)));
+    clearInvocations(mockClient);
+
+    Files.writeString(target, "<topic id='target'><title/><body><p id='new'/></body></topic>");
+    textDocumentService.filesChanged(List.of(target.toUri())).join();
+
+    verify(mockClient).publishDiagnostics(captor.capture());
+    assertTrue(
+        captor.getValue().getDiagnostics().stream().noneMatch(d -> d.getMessage().equals(missing)));
+  }
+
+  @Test
+  void filesChanged_rootMapAndTopic(@TempDir Path tempDir) throws IOException {
+    var root = tempDir.resolve("root.ditamap");
+    Files.writeString(root, "<map><mapref href='sub.ditamap'/></map>");
+    var sub = tempDir.resolve("sub.ditamap");
+    Files.writeString(sub, "<map><keydef keys='a' href='a.dita'/></map>");
+    var target = tempDir.resolve("target.dita");
+    Files.writeString(target, "<topic id='target'><title/><body><p id='old'/></body></topic>");
+    textDocumentService.setRootMapUri(root.toUri()).join();
+    var source = tempDir.resolve("source.dita").toUri();
+    didOpen(
+        createOpenParams(
+            source.toString(),
+            "<topic id='source'><title/><body><p><xref href='target.dita#target/new'/></p></body>"
+                + "</topic>"));
+    clearInvocations(mockClient);
+
+    Files.writeString(sub, "<map><keydef keys='b' href='b.dita'/></map>");
+    Files.writeString(target, "<topic id='target'><title/><body><p id='new'/></body></topic>");
+    textDocumentService.filesChanged(List.of(sub.toUri(), target.toUri())).join();
+
+    var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
+    verify(mockClient, atLeastOnce()).publishDiagnostics(captor.capture());
+    var missing =
+        ResourceBundle.getBundle("copy", Locale.ENGLISH)
+            .getString("error.keyref_id_missing")
+            .formatted("new");
+    assertTrue(
+        captor.getAllValues().get(0).getDiagnostics().stream()
+            .noneMatch(d -> d.getMessage().equals(missing)));
+  }
+
+  @Test
+  void setRootMapUri_undefinedKey(@TempDir Path tempDir) throws IOException {
+    var root = tempDir.resolve("root.ditamap");
+    Files.writeString(root, "<map><keydef keys='defined' href='a.dita'/></map>");
+    var source = tempDir.resolve("source.dita").toUri();
+    didOpen(
+        createOpenParams(
+            source.toString(),
+            "<topic id='source'><title/><body><p><ph keyref='undefined'/></p></body></topic>"));
+    clearInvocations(mockClient);
+
+    textDocumentService.setRootMapUri(root.toUri()).join();
+
+    var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
+    verify(mockClient).publishDiagnostics(captor.capture());
+    var missing =
+        ResourceBundle.getBundle("copy", Locale.ENGLISH)
+            .getString("error.missing_key")
+            .formatted("undefined");
+    assertTrue(messages(captor.getValue()).contains(missing));
+  }
+
+  @Test
+  void filesChanged_unrelated(@TempDir Path tempDir) throws IOException {
+    var source = tempDir.resolve("source.dita").toUri();
+    didOpen(
+        createOpenParams(source.toString(), "<topic id='source'><title/><body/></topic>"));
+    clearInvocations(mockClient);
+
+    textDocumentService.filesChanged(List.of(tempDir.resolve("other.dita").toUri())).join();
+
+    verify(mockClient, never()).publishDiagnostics(any());
+  }
+
+  @Test
+  void didOpen_progressive(@TempDir Path tempDir) {
+    var source = tempDir.resolve("source.dita").toUri();
+    didOpen(
+        createOpenParams(
+            source.toString(),
+            "<topic id='source'><title/><body><p id='p'/><p id='p'/>"
+                + "<p><xref href='missing.dita'/></p></body></topic>"));
+
+    var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
+    verify(mockClient, atLeast(2)).publishDiagnostics(captor.capture());
+    var locale = ResourceBundle.getBundle("copy", Locale.ENGLISH);
+    var duplicate = locale.getString("error.duplicate_element_id").formatted("p");
+    var missing = locale.getString("error.href_target_missing");
+    var fast = captor.getAllValues().get(0);
+    assertEquals(1, fast.getVersion());
+    assertEquals(List.of(duplicate), messages(fast));
+    var merged = messages(captor.getValue());
+    assertTrue(merged.containsAll(List.of(duplicate, missing)));
+  }
+
+  @Test
+  void didOpen_memoized(@TempDir Path tempDir) {
+    var source = tempDir.resolve("source.dita").toUri().toString();
+    var text = "<topic id='source'><title/><body><p id='p'/><p id='p'/></body></topic>";
+    didOpen(createOpenParams(source, text));
+    textDocumentService.didClose(
+        new DidCloseTextDocumentParams(new TextDocumentIdentifier(source)));
+    clearInvocations(mockClient);
+
+    didOpen(createOpenParams(source, text));
+
+    var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
+    verify(mockClient).publishDiagnostics(captor.capture());
+    var locale = ResourceBundle.getBundle("copy", Locale.ENGLISH);
+    var duplicate = locale.getString("error.duplicate_element_id").formatted("p");
+    assertEquals(List.of(duplicate), messages(captor.getValue()));
+    assertEquals(1, textDocumentService.getValidationCache().hits());
+  }
+
+  @Test
+  void didOpen_memoizedImageCreated(@TempDir Path tempDir) throws IOException {
+    var source = tempDir.resolve("source.dita").toUri().toString();
+    var text = "<topic id='source'><title/><body><image href='image.png'/></body></topic>";
+    didOpen(createOpenParams(source, text));
+    textDocumentService.didClose(
+        new DidCloseTextDocumentParams(new TextDocumentIdentifier(source)));
+    // Image content is not valid UTF-8
+    Files.write(tempDir.resolve("image.png"), new byte[] {(byte) 0x89, 'P', 'N', 'G', (byte) 0xff});
+    clearInvocations(mockClient);
+
+    didOpen(createOpenParams(source, text));
+
+    var captor = ArgumentCaptor.forClass(PublishDiagnosticsParams.class);
+    verify(mockClient, atLeastOnce()).publishDiagnostics(captor.capture());
+    var missing =
+        ResourceBundle.getBundle("copy", Locale.ENGLISH).getString("error.href_target_missing");
+    assertFalse(messages(captor.getValue()).contains(missing));
+    assertEquals(0, textDocumentService.getValidationCache().hits());
+  }
+
+  @Test
+  void diagnostic_pull(@TempDir Path tempDir) throws Exception {
+    textDocumentService.setPullDiagnostics(true, true);
+    var source = tempDir.resolve("source.dita").toUri().toString();
+    didOpen(
+        createOpenParams(
+            source, "<topic id='source'><title/><body><p id='p'/><p id='p'/></body></topic>"));
+    verify(mockClient, never()).publishDiagnostics(any());
+    var params = new DocumentDiagnosticParams(new TextDocumentIdentifier(source));
+
+    var full = textDocumentService.diagnostic(params).get().getLeft();
+    var locale = ResourceBundle.getBundle("copy", Locale.ENGLISH);
+    var duplicate = locale.getString("error.duplicate_element_id").formatted("p");
+    assertTrue(full.getItems().stream().anyMatch(d -> d.getMessage().equals(duplicate)));
+    assertNotNull(full.getResultId());
+
+    params.setPreviousResultId(full.getResultId());
+    var unchanged = textDocumentService.diagnostic(params).get().getRight();
+    assertEquals(full.getResultId(), unchanged.getResultId());
+
+    textDocumentService.revalidateAllOpenDocuments();
+    verify(mockClient).refreshDiagnostics();
+    var changed = textDocumentService.diagnostic(params).get().getLeft();
+    assertNotEquals(full.getResultId(), changed.getResultId());
+    assertEquals(full.getItems(), changed.getItems());
+  }
+
+  @Test
+  void setParserPoolSize_parserPending() throws Exception {
+    var executors = new TaskExecutors(2, false);
+    var blocked = new CountDownLatch(1);
+    executors.get(Workload.VALIDATION).execute(() -> awaitUninterruptibly(blocked));
+    try {
+      var service =
+          new DitaTextDocumentService(
+              server, new SmartDebouncer(0), executors, new Options(true, 0));
+
+      // Parser is still initializing, configuration must not wait for it
+      assertTimeoutPreemptively(
+          Duration.ofSeconds(5),
+          () -> {
+            service.setParserPoolSize(2);
+            service.setParserPoolSize(3);
+          });
+      assertThrows(IllegalArgumentException.class, () -> service.setParserPoolSize(0));
+
+      blocked.countDown();
+      assertEquals(3, service.getParser().getCacheManager().getPoolStats().capacity());
+    } finally {
+      blocked.countDown();
+      executors.shutdown();
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Open document and wait for parse and validation to complete. */
+  private void didOpen(DidOpenTextDocumentParams params) {
+    textDocumentService.didOpen(params);
+    var uri = URI.create(params.getTextDocument().getUri());
+    textDocumentService.getPipeline().pending(uri).join();
+  }
+
+  private static List<String> messages(PublishDiagnosticsParams params) {
+    return params.getDiagnostics().stream().map(Diagnostic::getMessage).toList();
+  }
+
   private DidOpenTextDocumentParams createOpenParams(String uri, String text) {
     DidOpenTextDocumentParams params = new DidOpenTextDocumentParams();
     TextDocumentItem document = new TextDocumentItem();
@@ -5,12 +5,16 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.elovirta.dita.DitaLanguageServer.Options;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import javax.xml.transform.sax.SAXSource;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.SaxonApiException;
 import org.apache.xerces.parsers.SAXParser;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -96,4 +100,49 @@ class DocumentManagerTest {
     var act = documentManager.listElementIds(URI.create("file:///topics/valid.dita"), "missing");
     assertEquals(List.of(), act);
   }
+
+  @Test
+  void get_fromDisk(@TempDir Path tempDir) throws IOException {
+    var file = tempDir.resolve("topic.dita");
+    Files.writeString(file, "<topic id='topic'><title/><body><p id='p'/></body></topic>");
+
+    var act = documentManager.get(file.toUri());
+
+    assertNotNull(act);
+    assertSame(act, documentManager.get(file.toUri()));
+    var open = new ArrayList<URI>();
+    documentManager.forEach((uri, res) -> open.add(uri));
+    assertEquals(List.of(URI.create("file:///topics/valid.dita")), open);
+  }
+
+  @Test
+  void get_evicted(@TempDir Path tempDir) throws IOException {
+    var first = tempDir.resolve("first.dita");
+    Files.writeString(first, "<topic id='first'><title/><body><p id='p'/></body></topic>");
+    var second = tempDir.resolve("second.dita");
+    Files.writeString(second, "<topic id='second'><title/><body><p id='q'/></body></topic>");
+    documentManager.setCacheBudget(0);
+
+    var firstDoc = documentManager.get(first.toUri());
+    documentManager.get(second.toUri());
+
+    assertTrue(documentManager.exists(first.toUri(), "first", "p"));
+    assertNotSame(firstDoc, documentManager.get(first.toUri()));
+  }
+
+  @Test
+  void remove() {
+    var uri = URI.create("file:///topics/valid.dita");
+    documentManager.remove(uri);
+
+    assertFalse(documentManager.getIndex().contains(uri));
+    assertNull(documentManager.get(uri));
+  }
+
+  @Test
+  void estimateSize() {
+    var doc = documentManager.get(URI.create("file:///topics/valid.dita")).document();
+
+    assertTrue(DocumentManager.estimateSize(doc) > 0);
+  }
 }
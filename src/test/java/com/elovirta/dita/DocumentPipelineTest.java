@@ -0,0 +1,72 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DocumentPipelineTest {
+
+  private static final URI DOC = URI.create("file:///topic.dita");
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final DocumentPipeline pipeline = new DocumentPipeline(executor);
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void submit_cancelQueued() throws Exception {
+    var blocker = new CountDownLatch(1);
+    executor.execute(() -> await(blocker));
+    var committed = new CopyOnWriteArrayList<Integer>();
+
+    var first = pipeline.submit(DOC, 1, version -> version.commit(() -> committed.add(1)));
+    var second = pipeline.submit(DOC, 2, version -> version.commit(() -> committed.add(2)));
+    blocker.countDown();
+    second.get(10, TimeUnit.SECONDS);
+
+    assertTrue(first.isCancelled());
+    assertEquals(List.of(2), committed);
+    assertEquals(1, pipeline.getSuperseded());
+  }
+
+  @Test
+  void commit_superseded() {
+    var first = pipeline.next(DOC, 1);
+    var second = pipeline.next(DOC, 2);
+
+    assertFalse(first.isCurrent());
+    assertFalse(first.commit(() -> fail("Superseded version committed")));
+    assertTrue(second.commit(() -> {}));
+    assertSame(second, pipeline.current(DOC));
+    assertEquals(2, second.version());
+  }
+
+  @Test
+  void close() {
+    var version = pipeline.next(DOC, 1);
+    pipeline.close(DOC);
+
+    assertFalse(version.isCurrent());
+    assertFalse(version.commit(() -> fail("Closed document committed")));
+    assertNull(pipeline.current(DOC));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.elovirta.dita.DitaLanguageServer.Options;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DocumentScannerTest {
+
+  private static final DitaParser parser = new DitaParser(new Options(true, 0));
+  private static final URI BASE = URI.create("file:///workspace/topic.dita");
+
+  private final DocumentScanner scanner =
+      new DocumentScanner(publicId -> parser.getCacheManager().getClassDefaults(publicId));
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "topics/valid.dita",
+        "topics/test.dita",
+        "root.ditamap",
+        "valid-keyref.dita",
+        "valid-conkeyref.dita"
+      })
+  void scan_matchesParse(String file) throws IOException {
+    var uri = URI.create("file:///" + file);
+    var content = readResource(file);
+
+    var exp = WorkspaceIndex.read(uri, parser.parse(content, uri).document());
+    var act = scanner.scan(uri, content.toCharArray());
+
+    assertEquals(exp, act);
+  }
+
+  @Test
+  void scan() {
+    var act =
+        scanner.scan(
+            BASE,
+            """
+            <topic id="topic">
+              <title>Topic <ph id="ph">&lt;title&gt;</ph>
+                &#x41;</title>
+              <body>
+                <p id="p" keys="a b"><xref href="other.dita#other/q"/><xref keyref="key/r"/></p>
+                <p><xref href="https://example.com/" scope="external"/></p>
+                <p><xref href="external.dita" scope="external"/></p>
+              </body>
+              <topic id="nested">
+                <title>Nested</title>
+                <body><p id="nested-p" conref="lib.dita#lib/p"/></body>
+              </topic>
+              <topic>
+                <title>No ID</title>
+                <body><p id="no-id-p"/></body>
+              </topic>
+            </topic>
+            """
+                .toCharArray());
+
+    assertEquals("topic", act.rootId());
+    assertEquals(Map.of("topic", "Topic <title> A", "nested", "Nested"), act.titles());
+    assertEquals(Map.of("topic", List.of("ph", "p"), "nested", List.of("nested-p")), act.ids());
+    assertEquals(Set.of("a", "b"), act.keys());
+    assertEquals(
+        Set.of(
+            URI.create("file:///workspace/other.dita"), URI.create("file:///workspace/lib.dita")),
+        act.references());
+    assertEquals(Set.of("key"), act.keyrefs());
+  }
+
+  @Test
+  void scan_classAttribute() {
+    var act =
+        scanner.scan(
+            BASE,
+            """
+            <custom class="- topic/topic custom/custom " id="custom">
+              <heading class="- topic/title custom/heading ">Heading</heading>
+              <custombody class="- topic/body custom/custombody "><p id="p"/></custombody>
+            </custom>
+            """
+                .toCharArray());
+
+    assertEquals(Map.of("custom", "Heading"), act.titles());
+    assertEquals(Map.of("custom", List.of("p")), act.ids());
+  }
+
+  @Test
+  void scan_malformed() {
+    var act =
+        scanner.scan(
+            BASE, "<topic id='topic'><title>Title</title><body><p id='p'><b></p>".toCharArray());
+
+    assertEquals(Map.of("topic", "Title"), act.titles());
+    assertEquals(Map.of("topic", List.of("p")), act.ids());
+  }
+
+  private String readResource(String name) throws IOException {
+    try (var in = getClass().getClassLoader().getResourceAsStream(name)) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
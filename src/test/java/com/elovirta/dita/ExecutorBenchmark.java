@@ -0,0 +1,139 @@
+package com.elovirta.dita;
+
+import static org.mockito.Mockito.*;
+
+import com.elovirta.dita.DitaLanguageServer.Options;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compare validation throughput of platform thread and virtual thread executors. Each run opens
+ * the source topics of a large map through {@code didOpen} with cold caches, and waits until the
+ * document pipeline has parsed and validated them. Cross-reference targets that are not open in
+ * the editor are read from disk.
+ *
+ * <p>Run with {@code ./gradlew benchmark}. Virtual threads require Java 21.
+ */
+@Tag("benchmark")
+class ExecutorBenchmark {
+
+  private static final int TOPICS = 1_000;
+  private static final int LINKS = 20;
+  private static final int ROUNDS = 3;
+
+  @TempDir Path workspace;
+
+  @Test
+  void validateMap() throws IOException {
+    var topics = createMap(workspace);
+    // Warm up JIT and DTD grammar snapshot
+    run(topics, false);
+    run(topics, true);
+    for (int i = 0; i < ROUNDS; i++) {
+      report("platform", topics.size(), run(topics, false));
+      report("virtual", topics.size(), run(topics, true));
+    }
+  }
+
+  private static long run(List<Path> topics, boolean virtualThreads) throws IOException {
+    var server = mock(DitaLanguageServer.class);
+    when(server.getClient()).thenReturn(mock(LanguageClient.class));
+    var executors = new TaskExecutors(virtualThreads);
+    var service =
+        new DitaTextDocumentService(server, new SmartDebouncer(0), executors, new Options(true, 0));
+    service.getParser();
+    var params = new ArrayList<DidOpenTextDocumentParams>();
+    for (Path topic : topics) {
+      params.add(
+          new DidOpenTextDocumentParams(
+              new TextDocumentItem(topic.toUri().toString(), "dita", 1, Files.readString(topic))));
+    }
+    try {
+      var start = System.nanoTime();
+      // Notifications are delivered one at a time, as on the message thread
+      for (DidOpenTextDocumentParams param : params) {
+        service.didOpen(param);
+      }
+      CompletableFuture.allOf(
+              params.stream()
+                  .map(param -> URI.create(param.getTextDocument().getUri()))
+                  .map(uri -> service.getPipeline().pending(uri))
+                  .toArray(CompletableFuture[]::new))
+          .join();
+      return System.nanoTime() - start;
+    } finally {
+      executors.shutdown();
+    }
+  }
+
+  private static void report(String mode, int documents, long nanos) {
+    var millis = nanos / 1_000_000;
+    System.out.printf(
+        "%-8s %5d documents in %6d ms, %7.1f documents/s%n",
+        mode, documents, millis, documents * 1_000_000_000.0 / nanos);
+  }
+
+  /**
+   * Create map with source topics that each link to target topics.
+   *
+   * @return source topics
+   */
+  private static List<Path> createMap(Path dir) throws IOException {
+    var topics = new ArrayList<Path>();
+    var map = new StringBuilder();
+    map.append(
+        """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <!DOCTYPE map PUBLIC "-//OASIS//DTD DITA Map//EN" "map.dtd">
+        <map>
+          <title>Benchmark</title>
+        """);
+    for (int i = 0; i < TOPICS; i++) {
+      var targetBody = new StringBuilder();
+      var sourceBody = new StringBuilder();
+      for (int j = 1; j <= LINKS; j++) {
+        var target = (i + j * 37) % TOPICS;
+        targetBody.append("<p id=\"p%d\">Paragraph %d</p>\n".formatted(j, j));
+        sourceBody.append(
+            "<p id=\"p%d\"><xref href=\"target%d.dita#target%d/p%d\"/></p>\n"
+                .formatted(j, target, target, j));
+      }
+      var targetTopic = writeTopic(dir, "target" + i, targetBody);
+      var sourceTopic = writeTopic(dir, "source" + i, sourceBody);
+      topics.add(sourceTopic);
+      map.append("  <topicref href=\"%s\"/>\n".formatted(sourceTopic.getFileName()));
+      map.append("  <topicref href=\"%s\"/>\n".formatted(targetTopic.getFileName()));
+    }
+    map.append("</map>\n");
+    Files.writeString(dir.resolve("benchmark.ditamap"), map);
+    return topics;
+  }
+
+  private static Path writeTopic(Path dir, String id, CharSequence body) throws IOException {
+    var topic = dir.resolve(id + ".dita");
+    Files.writeString(
+        topic,
+        """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <!DOCTYPE topic PUBLIC "-//OASIS//DTD DITA Topic//EN" "topic.dtd">
+        <topic id="%s">
+          <title>%s</title>
+          <body>
+        %s  </body>
+        </topic>
+        """
+            .formatted(id, id, body));
+    return topic;
+  }
+}
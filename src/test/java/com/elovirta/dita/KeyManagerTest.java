@@ -0,0 +1,111 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.elovirta.dita.DitaLanguageServer.Options;
+import java.net.URI;
+import java.util.Set;
+import net.sf.saxon.s9api.XdmNode;
+import org.junit.jupiter.api.Test;
+
+class KeyManagerTest {
+
+  private static final URI MAP = URI.create("file:///maps/root.ditamap");
+
+  private final DitaParser ditaParser = new DitaParser(new Options(true, 0));
+  private final KeyManager keyManager = new KeyManager();
+
+  @Test
+  void read() {
+    keyManager.read(
+        MAP,
+        parse(
+            """
+            <map>
+              <keydef keys="same" href="same.dita"/>
+              <keydef keys="moved" href="old.dita"/>
+              <keydef keys="removed" href="removed.dita"/>
+            </map>"""));
+    var version = keyManager.getVersion();
+
+    var act =
+        keyManager.read(
+            MAP,
+            parse(
+                """
+                <map>
+                  <keydef keys="same" href="same.dita"/>
+                  <keydef keys="moved" href="new.dita"/>
+                  <keydef keys="added" href="added.dita"/>
+                </map>"""));
+
+    assertEquals(Set.of("added"), act.added());
+    assertEquals(Set.of("removed"), act.removed());
+    assertEquals(Set.of("moved"), act.retargeted());
+    assertEquals(Set.of("added", "removed", "moved"), act.keys());
+    assertEquals(version + 1, keyManager.getVersion());
+    assertEquals(MAP.resolve("new.dita"), keyManager.get("moved").target());
+  }
+
+  @Test
+  void read_textChanged() {
+    keyManager.read(
+        MAP,
+        parse(
+            """
+            <map>
+              <keydef keys="key" href="topic.dita">
+                <topicmeta>
+                  <navtitle>Old title</navtitle>
+                  <keywords><keyword>Old text</keyword></keywords>
+                </topicmeta>
+              </keydef>
+            </map>"""));
+    var version = keyManager.getVersion();
+
+    var act =
+        keyManager.read(
+            MAP,
+            parse(
+                """
+                <map>
+                  <keydef keys="key" href="topic.dita">
+                    <topicmeta>
+                      <navtitle>New title</navtitle>
+                      <keywords><keyword>New text</keyword></keywords>
+                    </topicmeta>
+                  </keydef>
+                </map>"""));
+
+    assertTrue(act.isEmpty());
+    assertEquals(version, keyManager.getVersion());
+    assertEquals("New title", keyManager.get("key").navtitle());
+    assertEquals("New text", keyManager.get("key").text());
+  }
+
+  @Test
+  void read_allKeysRemoved() {
+    keyManager.read(
+        MAP,
+        parse(
+            """
+            <map>
+              <keydef keys="first" href="first.dita"/>
+              <keydef keys="second" href="second.dita"/>
+            </map>"""));
+    var version = keyManager.getVersion();
+
+    var act = keyManager.read(MAP, parse("<map><topicref href='topic.dita'/></map>"));
+
+    assertEquals(Set.of(), act.added());
+    assertEquals(Set.of("first", "second"), act.removed());
+    assertEquals(Set.of(), act.retargeted());
+    assertEquals(version + 1, keyManager.getVersion());
+    assertNull(keyManager.get("first"));
+    assertNull(keyManager.get("second"));
+  }
+
+  private XdmNode parse(String map) {
+    return ditaParser.parse(map, MAP).document();
+  }
+}
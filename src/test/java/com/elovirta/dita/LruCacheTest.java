@@ -0,0 +1,80 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LruCacheTest {
+
+  private final List<String> evicted = new ArrayList<>();
+  private final LruCache<String, String> cache =
+      new LruCache<>(10, String::length, (key, value) -> evicted.add(key));
+
+  @Test
+  void put() {
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+
+    assertEquals("aaaa", cache.get("a"));
+    assertEquals("bbbb", cache.get("b"));
+    assertEquals(8, cache.weight());
+    assertEquals(0, cache.evictions());
+  }
+
+  @Test
+  void put_evictLeastRecentlyUsed() {
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    cache.get("a");
+    cache.put("c", "cccc");
+
+    assertTrue(cache.containsKey("a"));
+    assertFalse(cache.containsKey("b"));
+    assertTrue(cache.containsKey("c"));
+    assertEquals(List.of("b"), evicted);
+    assertEquals(8, cache.weight());
+  }
+
+  @Test
+  void put_replace() {
+    cache.put("a", "aaaa");
+    cache.put("a", "aa");
+
+    assertEquals("aa", cache.get("a"));
+    assertEquals(2, cache.weight());
+    assertTrue(evicted.isEmpty());
+  }
+
+  @Test
+  void put_overBudget() {
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbbbbbbbbbbbbbb");
+
+    assertEquals(1, cache.size());
+    assertEquals("bbbbbbbbbbbbbbbb", cache.get("b"));
+    assertEquals(List.of("a"), evicted);
+  }
+
+  @Test
+  void remove() {
+    cache.put("a", "aaaa");
+
+    assertEquals("aaaa", cache.remove("a"));
+    assertNull(cache.remove("a"));
+    assertEquals(0, cache.weight());
+    assertTrue(evicted.isEmpty());
+  }
+
+  @Test
+  void setBudget() {
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    cache.setBudget(5);
+
+    assertEquals(List.of("a"), evicted);
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.evictions());
+  }
+}
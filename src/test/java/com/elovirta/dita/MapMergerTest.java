@@ -0,0 +1,100 @@
+package com.elovirta.dita;
+
+import static net.sf.saxon.s9api.streams.Predicates.attributeEq;
+import static net.sf.saxon.s9api.streams.Steps.descendant;
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.elovirta.dita.DitaLanguageServer.Options;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import net.sf.saxon.s9api.XdmNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MapMergerTest {
+
+  private final DitaParser parser = new DitaParser(new Options(true, 0));
+
+  @TempDir Path tempDir;
+
+  @Test
+  void merge() throws IOException {
+    var root = write("root.ditamap", "<map><mapref href='sub/a.ditamap'/></map>");
+    write("sub/a.ditamap", "<map><keydef keys='a' href='a.dita'/></map>");
+
+    var act = merge(root);
+
+    assertEquals(List.of("sub/a.dita"), hrefs(act, "a"));
+  }
+
+  @Test
+  void merge_changedBranch() throws IOException {
+    var root =
+        write("root.ditamap", "<map><mapref href='a.ditamap'/><mapref href='b.ditamap'/></map>");
+    write("a.ditamap", "<map><mapref href='c.ditamap'/></map>");
+    write("b.ditamap", "<map><keydef keys='b' href='b.dita'/></map>");
+    var c = write("c.ditamap", "<map><keydef keys='c' href='c.dita'/></map>");
+    merge(root);
+    var merger = parser.getMapMerger();
+    assertEquals(3, merger.merged());
+
+    merge(root);
+    assertEquals(3, merger.merged());
+
+    Files.writeString(c, "<map><keydef keys='c' href='changed.dita'/></map>");
+    Files.setLastModifiedTime(c, FileTime.from(Instant.now().plusSeconds(10)));
+    var act = merge(root);
+
+    // Only c and a, which references c, are merged again
+    assertEquals(5, merger.merged());
+    assertEquals(List.of("changed.dita"), hrefs(act, "c"));
+    assertEquals(List.of("b.dita"), hrefs(act, "b"));
+  }
+
+  @Test
+  void merge_openDocument() throws IOException {
+    var root = write("root.ditamap", "<map><mapref href='a.ditamap'/></map>");
+    var a = write("a.ditamap", "<map><keydef keys='a' href='a.dita'/></map>");
+    merge(root);
+    var editor =
+        parser.parse("<map><keydef keys='a' href='editor.dita'/></map>", a.toUri()).document();
+    parser.setOpenDocuments(
+        uri -> uri.equals(a.toUri()) ? new DitaParser.OpenDocument(editor, 1) : null);
+
+    var act = merge(root);
+
+    assertEquals(List.of("editor.dita"), hrefs(act, "a"));
+    assertEquals(2, parser.getMapMerger().merged());
+  }
+
+  @Test
+  void merge_loop() throws IOException {
+    var root = write("root.ditamap", "<map><mapref href='a.ditamap'/></map>");
+    write("a.ditamap", "<map><keydef keys='a' href='a.dita'/><mapref href='a.ditamap'/></map>");
+
+    var act = merge(root);
+
+    assertEquals(List.of("a.dita"), hrefs(act, "a"));
+  }
+
+  private XdmNode merge(Path map) throws IOException {
+    return parser.mergeMap(parser.parse(Files.readString(map), map.toUri()).document());
+  }
+
+  private static List<String> hrefs(XdmNode map, String key) {
+    return map.select(descendant().where(attributeEq("keys", key)))
+        .map(keydef -> keydef.attribute("href"))
+        .toList();
+  }
+
+  private Path write(String path, String content) throws IOException {
+    var file = tempDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content);
+    return file;
+  }
+}
@@ -0,0 +1,109 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.elovirta.dita.TaskExecutors.Workload;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TaskExecutorsTest {
+
+  private final TaskExecutors executors = new TaskExecutors(1, false);
+
+  @AfterEach
+  void tearDown() {
+    executors.shutdown();
+  }
+
+  @Test
+  void getStats() throws Exception {
+    var blocker = new CountDownLatch(1);
+    var started = new CountDownLatch(1);
+    var executor = executors.get(Workload.BACKGROUND);
+    var first =
+        CompletableFuture.runAsync(
+            () -> {
+              started.countDown();
+              await(blocker);
+            },
+            executor);
+    var second = CompletableFuture.runAsync(() -> {}, executor);
+    started.await(10, TimeUnit.SECONDS);
+
+    var queued = executors.getStats(Workload.BACKGROUND);
+    assertEquals(1, queued.threads());
+    assertEquals(1, queued.active());
+    assertEquals(1, queued.queued());
+
+    blocker.countDown();
+    CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+    // Statistics of the previous tasks are recorded when the next task starts
+    var next = new CountDownLatch(1);
+    executor.execute(next::countDown);
+    next.await(10, TimeUnit.SECONDS);
+
+    var done = executors.getStats(Workload.BACKGROUND);
+    assertEquals(0, done.queued());
+    assertEquals(2, done.completed());
+    assertTrue(done.maxWaitMillis() <= done.totalWaitMillis());
+  }
+
+  @Test
+  void get_isolated() throws Exception {
+    var blocker = new CountDownLatch(1);
+    executors.get(Workload.BACKGROUND).execute(() -> await(blocker));
+    try {
+      var res =
+          CompletableFuture.supplyAsync(
+                  () -> Thread.currentThread().getName(), executors.get(Workload.INTERACTIVE))
+              .get(10, TimeUnit.SECONDS);
+
+      assertTrue(res.startsWith("dita-interactive-"));
+    } finally {
+      blocker.countDown();
+    }
+  }
+
+  @Test
+  void getStats_all() {
+    var act = executors.getStats();
+
+    assertEquals(
+        List.of(Workload.INTERACTIVE, Workload.VALIDATION, Workload.BACKGROUND),
+        act.stream().map(TaskExecutors.Stats::workload).toList());
+    assertEquals(2, act.get(0).threads());
+  }
+
+  @Test
+  void get_virtualThreads() throws Exception {
+    assumeTrue(Runtime.version().feature() >= 21, "Virtual threads require Java 21");
+    var virtualExecutors = new TaskExecutors(1, true);
+    try {
+      var res =
+          CompletableFuture.supplyAsync(
+                  () -> Thread.currentThread().getName(),
+                  virtualExecutors.get(Workload.VALIDATION))
+              .get(10, TimeUnit.SECONDS);
+
+      assertTrue(virtualExecutors.isVirtualThreads());
+      assertTrue(res.startsWith("dita-virtual-"));
+      assertEquals(0, virtualExecutors.getStats(Workload.VALIDATION).threads());
+      assertEquals(1, virtualExecutors.getStats(Workload.BACKGROUND).threads());
+    } finally {
+      virtualExecutors.shutdown();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
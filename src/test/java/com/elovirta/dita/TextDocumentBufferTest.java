@@ -0,0 +1,101 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.stream.Stream;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class TextDocumentBufferTest {
+
+  @Test
+  void toCharArray() {
+    var buffer = new TextDocumentBuffer("<topic>\n<title/>\n</topic>");
+
+    assertArrayEquals("<topic>\n<title/>\n</topic>".toCharArray(), buffer.toCharArray());
+  }
+
+  static Stream<Arguments> replaceArguments() {
+    return Stream.of(
+        Arguments.of(0, 0, 0, 0, "x", "x<topic>\n<title/>\n</topic>"),
+        Arguments.of(0, 1, 0, 6, "map", "<map>\n<title/>\n</topic>"),
+        Arguments.of(1, 1, 1, 6, "", "<topic>\n</>\n</topic>"),
+        Arguments.of(0, 7, 1, 0, "", "<topic><title/>\n</topic>"),
+        Arguments.of(2, 2, 2, 7, "map", "<topic>\n<title/>\n</map>"),
+        Arguments.of(2, 8, 2, 8, "\n", "<topic>\n<title/>\n</topic>\n"));
+  }
+
+  @ParameterizedTest
+  @MethodSource("replaceArguments")
+  void replace(int startLine, int startChar, int endLine, int endChar, String text, String exp) {
+    var buffer = new TextDocumentBuffer("<topic>\n<title/>\n</topic>");
+
+    buffer.replace(
+        new Range(new Position(startLine, startChar), new Position(endLine, endChar)), text);
+
+    assertEquals(exp, buffer.toString());
+    assertEquals(exp.length(), buffer.length());
+  }
+
+  @Test
+  void replace_multiple() {
+    var buffer = new TextDocumentBuffer("<topic>\n<title/>\n</topic>");
+
+    buffer.replace(new Range(new Position(1, 6), new Position(1, 7)), ">Title</title");
+    buffer.replace(new Range(new Position(1, 0), new Position(1, 0)), "  ");
+    buffer.replace(new Range(new Position(2, 0), new Position(2, 0)), "<body/>\n");
+
+    assertEquals("<topic>\n  <title>Title</title>\n<body/>\n</topic>", buffer.toString());
+  }
+
+  @Test
+  void replace_afterMaterialize() {
+    var buffer = new TextDocumentBuffer("<topic>\n</topic>");
+    buffer.replace(new Range(new Position(1, 0), new Position(1, 0)), "<title/>\n");
+    var first = buffer.toCharArray();
+
+    buffer.replace(new Range(new Position(2, 2), new Position(2, 7)), "map");
+
+    assertEquals("<topic>\n<title/>\n</topic>", new String(first));
+    assertEquals("<topic>\n<title/>\n</map>", buffer.toString());
+  }
+
+  @Test
+  void replace_pastLineEnd() {
+    var buffer = new TextDocumentBuffer("<topic>\n<title/>\n</topic>");
+
+    buffer.replace(new Range(new Position(0, 20), new Position(0, 20)), " id='t'");
+    buffer.replace(new Range(new Position(1, 8), new Position(1, 30)), "<body/>");
+
+    assertEquals("<topic> id='t'\n<title/><body/>\n</topic>", buffer.toString());
+  }
+
+  @Test
+  void replace_pastLineEndCrLf() {
+    var buffer = new TextDocumentBuffer("<topic>\r\n</topic>");
+
+    buffer.replace(new Range(new Position(0, 20), new Position(0, 20)), "x");
+
+    assertEquals("<topic>x\r\n</topic>", buffer.toString());
+  }
+
+  @Test
+  void setText() {
+    var buffer = new TextDocumentBuffer("<topic/>");
+
+    buffer.setText("<map/>");
+
+    assertEquals("<map/>", buffer.toString());
+  }
+
+  @Test
+  void replace_outOfBounds() {
+    var buffer = new TextDocumentBuffer("<topic/>");
+
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.replace(2, 20, ""));
+  }
+}
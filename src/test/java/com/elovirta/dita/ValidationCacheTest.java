@@ -0,0 +1,54 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.junit.jupiter.api.Test;
+
+class ValidationCacheTest {
+
+  private final ValidationCache cache = new ValidationCache();
+
+  @Test
+  void get() {
+    var hash = ValidationCache.hash("<topic/>".toCharArray());
+    var diagnostics = new ArrayList<>(List.of(diagnostic("error")));
+    cache.put(new ValidationCache.Key(hash, Map.of("rootMap", true)), diagnostics);
+    diagnostics.clear();
+
+    assertEquals(
+        List.of(diagnostic("error")),
+        cache.get(new ValidationCache.Key(hash, Map.of("rootMap", true))));
+    assertEquals(1, cache.hits());
+    assertEquals(0, cache.misses());
+  }
+
+  @Test
+  void get_changedInputs() {
+    var hash = ValidationCache.hash("<topic/>".toCharArray());
+    cache.put(new ValidationCache.Key(hash, Map.of("rootMap", true)), List.of());
+
+    assertNull(cache.get(new ValidationCache.Key(hash, Map.of("rootMap", false))));
+    assertEquals(0, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  void hash() {
+    assertEquals(
+        ValidationCache.hash("<topic/>".toCharArray()),
+        ValidationCache.hash("<topic/>".toCharArray()));
+    assertNotEquals(
+        ValidationCache.hash("<topic/>".toCharArray()),
+        ValidationCache.hash("<topic />".toCharArray()));
+  }
+
+  private static Diagnostic diagnostic(String message) {
+    return new Diagnostic(new Range(new Position(0, 0), new Position(0, 1)), message);
+  }
+}
@@ -0,0 +1,166 @@
+package com.elovirta.dita;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.elovirta.dita.DitaLanguageServer.Options;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WorkspaceIndexTest {
+
+  private static final DitaParser parser = new DitaParser(new Options(true, 0));
+  private static final String DOCTYPE =
+      "<!DOCTYPE topic PUBLIC \"-//OASIS//DTD DITA Topic//EN\" \"topic.dtd\">\n";
+
+  @TempDir Path workspace;
+  @TempDir Path cacheDirectory;
+
+  private final WorkspaceIndex index = new WorkspaceIndex(() -> parser, null);
+
+  @Test
+  void index() throws Exception {
+    Files.createDirectories(workspace.resolve("topics"));
+    Files.writeString(
+        workspace.resolve("topics/topic.dita"),
+        """
+        <topic id="topic">
+          <title>Topic
+            title</title>
+          <body>
+            <p id="p">See <xref href="other.dita#other/q"/> and <xref keyref="key/r"/>.</p>
+            <p conkeyref="lib/s"/>
+            <p><xref href="https://example.com/" scope="external"/></p>
+          </body>
+          <topic id="nested">
+            <title>Nested</title>
+            <body><p id="nested-p"/></body>
+          </topic>
+        </topic>
+        """);
+    Files.writeString(
+        workspace.resolve("root.ditamap"),
+        """
+        <map>
+          <keydef keys="key lib" href="topics/topic.dita"/>
+          <topicref href="topics/topic.dita"/>
+        </map>
+        """);
+    Files.writeString(workspace.resolve("notes.txt"), "Not DITA");
+
+    index.index(List.of(workspace)).get(30, TimeUnit.SECONDS);
+
+    assertEquals(2, index.size());
+    var topic = index.get(workspace.resolve("topics/topic.dita").toUri());
+    assertEquals("topic", topic.rootId());
+    assertEquals(Map.of("topic", "Topic title", "nested", "Nested"), topic.titles());
+    assertEquals(Map.of("topic", List.of("p"), "nested", List.of("nested-p")), topic.ids());
+    assertEquals(Set.of(workspace.resolve("topics/other.dita").toUri()), topic.references());
+    assertEquals(Set.of("key", "lib"), topic.keyrefs());
+    var map = index.get(workspace.resolve("root.ditamap").toUri());
+    assertNull(map.rootId());
+    assertEquals(Set.of("key", "lib"), map.keys());
+    assertEquals(Set.of(workspace.resolve("topics/topic.dita").toUri()), map.references());
+  }
+
+  @Test
+  void index_missingFolder() throws Exception {
+    index.index(List.of(workspace.resolve("missing"))).get(30, TimeUnit.SECONDS);
+
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void index_store() throws Exception {
+    var file = workspace.resolve("topic.dita");
+    Files.writeString(file, DOCTYPE + "<topic id='topic'><title>Title</title><p id='p'/></topic>");
+    // Scanning a document with a DOCTYPE looks up grammar from parser
+    var parses = new AtomicInteger();
+    Supplier<DitaParser> countingParser =
+        () -> {
+          parses.incrementAndGet();
+          return parser;
+        };
+
+    new WorkspaceIndex(countingParser, cacheDirectory).index(List.of(workspace)).join();
+    assertEquals(1, parses.getAndSet(0));
+
+    var restarted = new WorkspaceIndex(countingParser, cacheDirectory);
+    restarted.index(List.of(workspace)).join();
+    assertEquals(0, parses.getAndSet(0));
+    assertEquals(Map.of("topic", List.of("p")), restarted.get(file.toUri()).ids());
+
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    new WorkspaceIndex(countingParser, cacheDirectory).index(List.of(workspace)).join();
+    assertEquals(0, parses.getAndSet(0));
+
+    Files.writeString(file, DOCTYPE + "<topic id='changed'><title>Title</title></topic>");
+    var changed = new WorkspaceIndex(countingParser, cacheDirectory);
+    changed.index(List.of(workspace)).join();
+    assertEquals(1, parses.getAndSet(0));
+    assertEquals("changed", changed.get(file.toUri()).rootId());
+  }
+
+  @Test
+  void index_storeCorrupt() throws Exception {
+    Files.writeString(workspace.resolve("topic.dita"), "<topic id='topic'/>");
+    new WorkspaceIndex(() -> parser, cacheDirectory).index(List.of(workspace)).join();
+    try (var files = Files.list(cacheDirectory)) {
+      Files.write(files.findFirst().orElseThrow(), new byte[] {1, 2, 3});
+    }
+
+    var act = new WorkspaceIndex(() -> parser, cacheDirectory);
+    act.index(List.of(workspace)).join();
+
+    assertEquals("topic", act.get(workspace.resolve("topic.dita").toUri()).rootId());
+  }
+
+  @Test
+  void update() throws IOException {
+    var file = workspace.resolve("topic.dita");
+    Files.writeString(file, "<topic id='old'><title>Old</title></topic>");
+    var doc = parser.parse("<topic id='new'><title>New</title></topic>", file.toUri()).document();
+
+    index.update(file.toUri(), doc);
+    index.index(List.of(workspace)).join();
+
+    assertEquals("new", index.get(file.toUri()).rootId());
+  }
+
+  @Test
+  void index_storeOpenDocument() throws Exception {
+    var file = workspace.resolve("topic.dita");
+    Files.writeString(file, "<topic id='saved'><title>Saved</title></topic>");
+    var workspaceIndex = new WorkspaceIndex(() -> parser, cacheDirectory);
+    var editor =
+        parser.parse("<topic id='unsaved'><title>Unsaved</title></topic>", file.toUri()).document();
+
+    workspaceIndex.update(file.toUri(), editor);
+    workspaceIndex.index(List.of(workspace)).join();
+
+    assertEquals("unsaved", workspaceIndex.get(file.toUri()).rootId());
+    var act = WorkspaceIndexStore.read(getStoreFile());
+    assertEquals(Set.of(file.toUri()), act.keySet());
+    assertEquals("saved", act.get(file.toUri()).entry().rootId());
+
+    workspaceIndex.invalidate(file.toUri());
+    workspaceIndex.persist();
+
+    assertEquals(Map.of(), WorkspaceIndexStore.read(getStoreFile()));
+  }
+
+  private Path getStoreFile() throws IOException {
+    try (var files = Files.list(cacheDirectory)) {
+      return files.findFirst().orElseThrow();
+    }
+  }
+}
@@ -122,10 +122,20 @@ class AbstractXmlFilterTest {
     }
 
     @Override
-    public char[] getText() {
+    public char[] getTextBuffer() {
       return src[index].name().toCharArray();
     }
 
+    @Override
+    public int getTextStart() {
+      return 0;
+    }
+
+    @Override
+    public int getTextLength() {
+      return src[index].name().length();
+    }
+
     @Override
     public int getLine() {
       return index;
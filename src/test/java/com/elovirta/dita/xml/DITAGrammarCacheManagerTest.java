@@ -0,0 +1,206 @@
+package com.elovirta.dita.xml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.xerces.impl.dtd.DTDGrammar;
+import org.apache.xerces.impl.dtd.XMLAttributeDecl;
+import org.apache.xerces.impl.dtd.XMLElementDecl;
+import org.apache.xerces.parsers.SAXParser;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.InputSource;
+import org.xmlresolver.Resolver;
+import org.xmlresolver.ResolverFeature;
+import org.xmlresolver.XMLResolverConfiguration;
+
+class DITAGrammarCacheManagerTest {
+
+  @TempDir Path cacheDirectory;
+
+  private final Resolver resolver = createResolver();
+
+  @Test
+  void snapshot() throws IOException {
+    var preparsed = new DITAGrammarCacheManager(resolver, cacheDirectory).getGrammars();
+    try (var files = Files.list(cacheDirectory)) {
+      assertEquals(1, files.count());
+    }
+
+    var loaded = new DITAGrammarCacheManager(resolver, cacheDirectory).getGrammars();
+
+    assertEquals(describe(preparsed), describe(loaded));
+  }
+
+  @Test
+  void snapshot_corrupt() throws IOException {
+    new DITAGrammarCacheManager(resolver, cacheDirectory);
+    try (var files = Files.list(cacheDirectory)) {
+      Files.write(files.findFirst().orElseThrow(), new byte[] {1, 2, 3});
+    }
+
+    var act = new DITAGrammarCacheManager(resolver, cacheDirectory).getGrammars();
+
+    assertEquals(
+        describe(new DITAGrammarCacheManager(resolver, null).getGrammars()), describe(act));
+  }
+
+  @Test
+  void withParser_sharesNewGrammars() {
+    var manager = new DITAGrammarCacheManager(resolver, null);
+    var preparsed = manager.getGrammars().length;
+
+    var parses = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < 4; i++) {
+      var systemId = "file:/dir" + i + "/glossentry.dita";
+      parses.add(CompletableFuture.runAsync(() -> parse(manager, systemId)));
+    }
+    parses.forEach(CompletableFuture::join);
+
+    assertEquals(preparsed + 1, manager.getGrammars().length);
+  }
+
+  @Test
+  void withParser_backPressure() throws Exception {
+    var manager = new DITAGrammarCacheManager(resolver, null);
+    manager.setCapacity(1);
+    var executor = Executors.newFixedThreadPool(2);
+    var started = new CountDownLatch(1);
+    var finish = new CountDownLatch(1);
+
+    var first =
+        CompletableFuture.runAsync(
+            () ->
+                manager.withParser(
+                    parser -> {
+                      started.countDown();
+                      await(finish);
+                      return null;
+                    }),
+            executor);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    var second =
+        CompletableFuture.supplyAsync(() -> manager.withParser(parser -> parser), executor);
+    while (manager.getPoolStats().waited() == 0) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(10);
+    finish.countDown();
+
+    first.get(5, TimeUnit.SECONDS);
+    assertNotNull(second.get(5, TimeUnit.SECONDS));
+    var stats = manager.getPoolStats();
+    assertEquals(1, stats.capacity());
+    assertEquals(1, stats.created());
+    assertEquals(1, stats.idle());
+    assertEquals(2, stats.acquired());
+    assertEquals(1, stats.waited());
+    assertTrue(stats.maxWaitMillis() > 0);
+    executor.shutdown();
+  }
+
+  @Test
+  void setCapacity() {
+    var manager = new DITAGrammarCacheManager(resolver, null);
+    manager.setCapacity(4);
+    var parses = new ArrayList<CompletableFuture<SAXParser>>();
+    for (int i = 0; i < 8; i++) {
+      parses.add(CompletableFuture.supplyAsync(() -> manager.withParser(parser -> parser)));
+    }
+    parses.forEach(CompletableFuture::join);
+
+    manager.setCapacity(2);
+
+    assertEquals(2, manager.getPoolStats().capacity());
+    assertTrue(manager.getPoolStats().idle() <= 2);
+    assertThrows(IllegalArgumentException.class, () -> manager.setCapacity(0));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void parse(DITAGrammarCacheManager manager, String systemId) {
+    var src =
+        """
+        <!DOCTYPE glossentry PUBLIC "-//OASIS//DTD DITA Glossary Entry//EN" "glossentry.dtd">
+        <glossentry id="term"><glossterm>Term</glossterm></glossentry>
+        """;
+    try {
+      manager.withParser(
+          parser -> {
+            var input = new InputSource(new StringReader(src));
+            input.setSystemId(systemId);
+            parser.parse(input);
+            return null;
+          });
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Map<String, List<String>> describe(Grammar[] grammars) {
+    assertNotNull(grammars);
+    return Arrays.stream(grammars)
+        .map(DTDGrammar.class::cast)
+        .collect(
+            Collectors.toMap(
+                g -> g.getGrammarDescription().getExpandedSystemId(),
+                DITAGrammarCacheManagerTest::describe));
+  }
+
+  private static List<String> describe(DTDGrammar grammar) {
+    var res = new ArrayList<String>();
+    var elementDecl = new XMLElementDecl();
+    var attributeDecl = new XMLAttributeDecl();
+    for (int e = grammar.getFirstElementDeclIndex();
+        e != -1;
+        e = grammar.getNextElementDeclIndex(e)) {
+      grammar.getElementDecl(e, elementDecl);
+      res.add(elementDecl.name.rawname + " " + grammar.getContentSpecAsString(e));
+      for (int a = grammar.getFirstAttributeDeclIndex(e);
+          a != -1;
+          a = grammar.getNextAttributeDeclIndex(a)) {
+        grammar.getAttributeDecl(a, attributeDecl);
+        res.add(
+            elementDecl.name.rawname
+                + "@"
+                + attributeDecl.name.rawname
+                + " "
+                + attributeDecl.simpleType.type
+                + " "
+                + attributeDecl.simpleType.defaultType
+                + " "
+                + attributeDecl.simpleType.defaultValue);
+      }
+    }
+    return res;
+  }
+
+  private static Resolver createResolver() {
+    var config = new XMLResolverConfiguration();
+    config.setFeature(ResolverFeature.PREFER_PUBLIC, true);
+    config.setFeature(ResolverFeature.CATALOG_FILES, List.of("classpath:/schemas/catalog.xml"));
+    return new Resolver(config);
+  }
+}
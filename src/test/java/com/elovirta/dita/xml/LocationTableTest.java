@@ -0,0 +1,93 @@
+package com.elovirta.dita.xml;
+
+import static net.sf.saxon.s9api.streams.Steps.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import javax.xml.transform.sax.SAXSource;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+
+class LocationTableTest {
+
+  private static final String SRC =
+      """
+      <topic id="topic">
+        <title>Title</title>
+        <p
+          href="a.dita" xml:lang="en">Text</p>
+      </topic>
+      """;
+
+  private final Processor processor = new Processor(false);
+  private XdmNode doc;
+
+  @BeforeEach
+  void setUp() throws IOException, SaxonApiException {
+    try (var in = new XmlSerializerReader(new XmlSerializer(), SRC.toCharArray())) {
+      in.readProlog();
+      doc = processor.newDocumentBuilder().build(new SAXSource(new InputSource(in)));
+      in.getLocations().bind(doc);
+    }
+  }
+
+  @Test
+  void getElementRange() {
+    assertEquals(range(0, 1, 0, 7), LocationTable.getElementRange(element("topic")));
+    assertEquals(range(1, 3, 1, 9), LocationTable.getElementRange(element("title")));
+    assertEquals(range(2, 3, 2, 5), LocationTable.getElementRange(element("p")));
+  }
+
+  @Test
+  void getAttributeRange() {
+    assertEquals(
+        range(0, 11, 0, 16),
+        LocationTable.getAttributeRange(element("topic").select(attribute("id")).asNode()));
+    assertEquals(
+        range(3, 10, 3, 16),
+        LocationTable.getAttributeRange(element("p").select(attribute("href")).asNode()));
+    assertEquals(
+        range(3, 28, 3, 30),
+        LocationTable.getAttributeRange(
+            element("p")
+                .select(attribute("http://www.w3.org/XML/1998/namespace", "lang"))
+                .asNode()));
+  }
+
+  @Test
+  void getElementRange_withoutTable() throws SaxonApiException {
+    var src =
+        processor
+            .newDocumentBuilder()
+            .build(new SAXSource(new InputSource(new StringReader("<topic/>"))));
+
+    assertNull(LocationTable.getElementRange(src.select(child("topic")).asNode()));
+  }
+
+  @Test
+  void elementLocationFunction() throws SaxonApiException {
+    processor.registerExtensionFunction(new LocationTable.ElementLocationFunction());
+    var xpath = processor.newXPathCompiler();
+    xpath.declareNamespace("loc", LocationTable.NAMESPACE);
+
+    var act = xpath.evaluateSingle("loc:elem(/topic/p)", doc);
+
+    assertEquals("3:4-3:5", act.getStringValue());
+  }
+
+  private XdmNode element(String name) {
+    return doc.select(descendant(name)).asNode();
+  }
+
+  private static Range range(int startLine, int startChar, int endLine, int endChar) {
+    return new Range(new Position(startLine, startChar), new Position(endLine, endChar));
+  }
+}
@@ -0,0 +1,90 @@
+package com.elovirta.dita.xml;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.xerces.impl.dtd.XMLDTDDescription;
+import org.apache.xerces.xni.grammars.Grammar;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.junit.jupiter.api.Test;
+
+class SharedGrammarPoolTest {
+
+  private static final String PUBLIC_ID = "-//OASIS//DTD DITA Glossary Entry//EN";
+
+  private final SharedGrammarPool pool = new SharedGrammarPool(10_000);
+
+  @Test
+  void cacheGrammars() {
+    var grammar = grammar(PUBLIC_ID, "file:/a/glossentry.dtd");
+
+    assertNull(pool.retrieveGrammar(description(PUBLIC_ID, "file:/a/glossentry.dtd")));
+    pool.cacheGrammars(XMLGrammarDescription.XML_DTD, new Grammar[] {grammar});
+
+    assertSame(grammar, pool.retrieveGrammar(description(PUBLIC_ID, "file:/b/glossentry.dtd")));
+    assertArrayEquals(
+        new Grammar[] {grammar}, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD));
+  }
+
+  @Test
+  void cacheGrammars_duplicate() {
+    var first = grammar(PUBLIC_ID, "file:/a/glossentry.dtd");
+    var second = grammar(PUBLIC_ID, "file:/b/glossentry.dtd");
+
+    pool.cacheGrammars(XMLGrammarDescription.XML_DTD, new Grammar[] {first});
+    pool.cacheGrammars(XMLGrammarDescription.XML_DTD, new Grammar[] {second});
+
+    assertSame(first, pool.retrieveGrammar(description(PUBLIC_ID, null)));
+    assertArrayEquals(
+        new Grammar[] {first}, pool.retrieveInitialGrammarSet(XMLGrammarDescription.XML_DTD));
+  }
+
+  @Test
+  void retrieveGrammar_systemId() {
+    var grammar = grammar(null, "file:/a/custom.dtd");
+    pool.cacheGrammars(XMLGrammarDescription.XML_DTD, new Grammar[] {grammar});
+
+    assertSame(grammar, pool.retrieveGrammar(description(null, "file:/a/custom.dtd")));
+    assertNull(pool.retrieveGrammar(description(null, "file:/b/custom.dtd")));
+  }
+
+  @Test
+  void retrieveGrammar_waitForLoading() throws Exception {
+    var grammar = grammar(PUBLIC_ID, "file:/a/glossentry.dtd");
+    assertNull(pool.retrieveGrammar(description(PUBLIC_ID, "file:/a/glossentry.dtd")));
+
+    var waiting =
+        CompletableFuture.supplyAsync(
+            () -> pool.retrieveGrammar(description(PUBLIC_ID, "file:/b/glossentry.dtd")));
+    pool.cacheGrammars(XMLGrammarDescription.XML_DTD, new Grammar[] {grammar});
+
+    assertSame(grammar, waiting.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void releaseClaims() throws Exception {
+    assertNull(pool.retrieveGrammar(description(PUBLIC_ID, "file:/a/glossentry.dtd")));
+
+    var waiting =
+        CompletableFuture.supplyAsync(
+            () -> pool.retrieveGrammar(description(PUBLIC_ID, "file:/b/glossentry.dtd")));
+    pool.releaseClaims();
+
+    assertNull(waiting.get(5, TimeUnit.SECONDS));
+  }
+
+  private static Grammar grammar(String publicId, String systemId) {
+    var grammar = mock(Grammar.class);
+    when(grammar.getGrammarDescription()).thenReturn(description(publicId, systemId));
+    return grammar;
+  }
+
+  private static XMLDTDDescription description(String publicId, String systemId) {
+    return new XMLDTDDescription(publicId, systemId, null, systemId, "glossentry");
+  }
+}
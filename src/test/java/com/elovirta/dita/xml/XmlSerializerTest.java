@@ -1,13 +1,16 @@
 package com.elovirta.dita.xml;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
-import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.params.provider.MethodSource;
 
 public class XmlSerializerTest extends TestUtils {
 
@@ -17,9 +20,8 @@ public class XmlSerializerTest extends TestUtils {
     super("serializer/exp");
   }
 
-  @ParameterizedTest
-  @ValueSource(
-      strings = {
+  static Stream<String> files() {
+    return Stream.of(
         "test.xml",
         "element.xml",
         "element-invalid.xml",
@@ -37,8 +39,11 @@ public class XmlSerializerTest extends TestUtils {
         "comment.xml",
         "doctype.xml",
         "processing-instruction.xml",
-        "xml-declaration.xml"
-      })
+        "xml-declaration.xml");
+  }
+
+  @ParameterizedTest
+  @MethodSource("files")
   void serialize(String file) throws IOException {
     String act = null;
     try (StringWriter output = new StringWriter()) {
@@ -54,4 +59,31 @@ public class XmlSerializerTest extends TestUtils {
       throw e;
     }
   }
+
+  @ParameterizedTest
+  @MethodSource("files")
+  void read(String file) throws IOException {
+    var input = readResource("/serializer/src/" + file);
+    var act = new StringBuilder();
+    try (var reader = new XmlSerializerReader(new XmlSerializer(), input.toCharArray())) {
+      reader.readProlog();
+      var buf = new char[3];
+      int len;
+      while ((len = reader.read(buf)) != -1) {
+        act.append(buf, 0, len);
+      }
+    }
+
+    assertEquals(readResource("/" + path + "/" + file), act.toString());
+  }
+
+  @Test
+  void readProlog() throws IOException {
+    var input = "<?xml version='1.0'?>\n<!DOCTYPE topic SYSTEM 'topic.dtd'>\n<topic/>";
+    try (var reader = new XmlSerializerReader(new XmlSerializer(), input.toCharArray())) {
+      var act = reader.readProlog();
+
+      assertTrue(act.hasDoctype());
+    }
+  }
 }
@@ -0,0 +1,94 @@
+package com.elovirta.dita.xml;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class XmlTokenCacheTest {
+
+  private static final String TOPIC =
+      """
+      <topic id="topic" class="- topic/topic ">
+        <title>Title</title>
+        <!-- comment -->
+        <body>
+          <p id='para'>Text &amp; more</p>
+          <image href="image.png"/>
+        </body>
+      </topic>
+      """;
+
+  private final XmlTokenCache cache = new XmlTokenCache();
+
+  @Test
+  void update() {
+    var input = TOPIC.toCharArray();
+
+    var act = cache.update(input);
+
+    assertEquals(tokenize(input), replay(act.lexer()));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "'<topic',0,0",
+    "'x',50,52",
+    "'\"',95,95",
+    "'<!--',60,60",
+    "'',0,20",
+    "'<p>',100,101"
+  })
+  void update_afterEdit(String text, int start, int end) {
+    var document = new StringBuilder(TOPIC.repeat(400));
+    cache.update(document.toString().toCharArray());
+
+    var offset = TOPIC.length() * 200;
+    document.replace(offset + start, offset + end, text);
+    cache.edit(offset + start, offset + end, text.length());
+    var input = document.toString().toCharArray();
+    var act = cache.update(input);
+
+    assertEquals(tokenize(input), replay(act.lexer()));
+  }
+
+  @Test
+  void update_multipleEdits() {
+    var document = new StringBuilder(TOPIC.repeat(400));
+    cache.update(document.toString().toCharArray());
+
+    document.insert(30_000, "<p>");
+    cache.edit(30_000, 30_000, 3);
+    document.delete(10_000, 10_010);
+    cache.edit(10_000, 10_010, 0);
+    document.replace(50_000, 50_001, "'\"");
+    cache.edit(50_000, 50_001, 2);
+    var input = document.toString().toCharArray();
+    var act = cache.update(input);
+
+    assertEquals(tokenize(input), replay(act.lexer()));
+  }
+
+  private List<TestUtils.Event> tokenize(char[] input) {
+    var lexer = new XmlLexerImpl(true);
+    lexer.setInput(input);
+    return replay(lexer);
+  }
+
+  private List<TestUtils.Event> replay(XmlLexer lexer) {
+    var act = new ArrayList<TestUtils.Event>();
+    lexer.forEachRemaining(
+        e ->
+            act.add(
+                new TestUtils.Event(
+                    e,
+                    new String(lexer.getText()),
+                    lexer.getLine(),
+                    lexer.getColumn(),
+                    lexer.getOffset())));
+    return act;
+  }
+}